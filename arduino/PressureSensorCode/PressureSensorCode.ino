@@ -1,9 +1,10 @@
-const int numPads = 4;
+const int numPads = 4;  // up to 16 lanes (the 8-pad cabinet uses A0..A7)
 const int sensorPins[numPads] = {A0, A1, A2, A3};
 const int PRESSURE_THRESHOLD = 600;  // absolute pressure threshold (0–1023)
 bool padStates[numPads] = {false, false, false, false};
 const int START_BYTE = 0xA5;
 const int ACK_BYTE = 0xB5;
+const uint8_t CHORD_MARKER = 0x3F;  // payload announcing a 16-bit lane mask (2 bytes follow)
 
 
 // --- ArduinoID ---
@@ -40,12 +41,14 @@ void pressureSensorHandler() {
   if (currentTime - lastReadTime >= readInterval) {
     lastReadTime = currentTime;
 
+    uint16_t pressedMask = 0;  // pads that went down during this scan
+
     for (int i = 0; i < numPads; i++) {
       int value = analogRead(sensorPins[i]);
 
       if (!padStates[i] && value > PRESSURE_THRESHOLD) {
         padStates[i] = true;
-        Serial.write(((ID1 << 7) | (ID0 << 6) | ((i) & 0x07)));
+        pressedMask |= (1 << i);
       }
 
       // Reset when released (value drops below threshold - 100)
@@ -53,6 +56,21 @@ void pressureSensorHandler() {
         padStates[i] = false;
       }
     }
+
+    sendHits(pressedMask);
+  }
+}
+
+void sendHits(uint16_t mask) {
+  if (mask == 0) return;
+  if ((mask & (mask - 1)) == 0) {
+    // single pad: 1-byte packet with the lane index as payload
+    Serial.write(((ID1 << 7) | (ID0 << 6) | (__builtin_ctz(mask) & 0x0F)));
+  } else {
+    // chord: header byte, then the lane mask low byte first
+    Serial.write(((ID1 << 7) | (ID0 << 6) | CHORD_MARKER));
+    Serial.write((uint8_t)(mask & 0xFF));
+    Serial.write((uint8_t)((mask >> 8) & 0xFF));
   }
 }
 void loop() {
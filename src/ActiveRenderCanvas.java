@@ -0,0 +1,222 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ActiveRenderCanvas - Draws the HUD from its own render thread instead of Swing's repaint.
+ *
+ * Swing coalesces repaint() requests and paints whenever the EDT gets to them, so the
+ * delay between a beat lighting up and the pad appearing on screen is unpredictable.
+ * Here a render thread draws BeatDiamondPanel's state (paintHud) into a page-flipped
+ * BufferStrategy (accelerated VolatileImage buffers) and shows it itself. A change
+ * wakes the thread at once; frames are paced to at most targetFps, so a burst of
+ * changes costs one frame per period, and nothing is drawn while nothing changes.
+ *
+ * Frame time (draw + show) and present latency (chord activated to frame shown) are
+ * recorded and their percentiles logged every STATS_INTERVAL_MS.
+ */
+public class ActiveRenderCanvas extends Canvas implements Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_FPS = 120;
+    private static final long STATS_INTERVAL_MS = 10_000;
+    private static final long IDLE_PARK_NANOS = 250_000_000L; // re-check running while idle
+
+    private final BeatDiamondPanel hud;
+    private final long framePeriodNanos;
+    private final FrameStats frameTimes = new FrameStats();
+    private final FrameStats presentLatency = new FrameStats();
+
+    private volatile boolean dirty = true;
+    private volatile boolean running = false;
+    private volatile Thread renderThread;
+
+    /**
+     * @param hud panel whose state is drawn (not shown itself)
+     * @param targetFps most frames per second to draw (changes within a period share a frame)
+     */
+    public ActiveRenderCanvas(BeatDiamondPanel hud, int targetFps) {
+        if (hud == null) throw new IllegalArgumentException("HUD panel cannot be null");
+        this.hud = hud;
+        this.framePeriodNanos = 1_000_000_000L / Math.max(1, targetFps);
+        setPreferredSize(hud.getPreferredSize());
+        setBackground(Color.BLACK);
+        hud.setChangeListener(this::requestFrame);
+    }
+
+    /**
+     * Draw a frame as soon as pacing allows (any thread)
+     */
+    public void requestFrame() {
+        dirty = true;
+        Thread t = renderThread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    // AWT asks for paints on expose and resize: the render thread does the drawing
+    @Override
+    public void paint(Graphics g) {
+        requestFrame();
+    }
+
+    @Override
+    public void update(Graphics g) {
+        requestFrame();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        running = true;
+        Thread t = new Thread(this, "HudRenderThread");
+        t.setDaemon(true);
+        renderThread = t;
+        t.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        running = false;
+        Thread t = renderThread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        renderThread = null;
+        super.removeNotify();
+    }
+
+    @Override
+    public void run() {
+        System.out.println("[ActiveRenderCanvas] Render thread started ("
+                + (1_000_000_000L / framePeriodNanos) + " fps max)");
+        createBufferStrategy(2);
+        BufferStrategy strategy = getBufferStrategy();
+
+        long lastFrame = System.nanoTime() - framePeriodNanos;
+        long redrawAt = Long.MAX_VALUE;    // nanoTime a flash or overlay ends
+        long lastActivation = hud.snapshot().activatedAtNanos;
+        long nextReport = System.nanoTime() + STATS_INTERVAL_MS * 1_000_000L;
+
+        while (running) {
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                reportStats();
+                nextReport = now + STATS_INTERVAL_MS * 1_000_000L;
+            }
+            if (!dirty && now < redrawAt) {
+                LockSupport.parkNanos(this, Math.min(redrawAt - now, IDLE_PARK_NANOS));
+                continue;
+            }
+            long earliest = lastFrame + framePeriodNanos;
+            if (now < earliest) {
+                LockSupport.parkNanos(this, earliest - now);
+                continue;
+            }
+
+            dirty = false;
+            lastFrame = now;
+            BeatDiamondPanel.HudState state = hud.snapshot();
+            long until = drawFrame(strategy, state);
+            long shown = System.nanoTime();
+
+            frameTimes.record(shown - now);
+            if (state.activatedAtNanos != lastActivation) {
+                presentLatency.record(shown - state.activatedAtNanos);
+                lastActivation = state.activatedAtNanos;
+            }
+            redrawAt = until == Long.MAX_VALUE ? Long.MAX_VALUE
+                    : shown + (until - System.currentTimeMillis()) * 1_000_000L;
+        }
+        reportStats();
+        strategy.dispose();
+        System.out.println("[ActiveRenderCanvas] Render thread stopped");
+    }
+
+    /**
+     * Draw and show one frame of a HUD snapshot, redrawing if the buffers were lost meanwhile
+     *
+     * @return when the HUD must be drawn again (as paintHud), or Long.MAX_VALUE
+     */
+    private long drawFrame(BufferStrategy strategy, BeatDiamondPanel.HudState state) {
+        long until;
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    int w = getWidth();
+                    int h = getHeight();
+                    g2.setColor(getBackground());
+                    g2.fillRect(0, 0, w, h);
+                    until = hud.paintHud(g2, w, h, state);
+                } finally {
+                    g2.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        // Push the frame out now rather than when the window system next flushes
+        Toolkit.getDefaultToolkit().sync();
+        return until;
+    }
+
+    /**
+     * Log frame time and present latency percentiles since the last report, then start over
+     */
+    private void reportStats() {
+        if (frameTimes.count() == 0) return;
+        System.out.println("[ActiveRenderCanvas] " + frameTimes.count() + " frames, frame ms "
+                + frameTimes.summary() + "; beat->present ms (" + presentLatency.count() + " beats) "
+                + presentLatency.summary());
+        frameTimes.clear();
+        presentLatency.clear();
+    }
+
+    /**
+     * Latest CAPACITY samples of a duration, in nanoseconds (render thread only)
+     */
+    private static class FrameStats {
+        private static final int CAPACITY = 4096;
+        private final long[] samples = new long[CAPACITY];
+        private final long[] sorted = new long[CAPACITY];
+        private int count = 0;
+        private int next = 0;
+
+        void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % CAPACITY;
+            count = Math.min(count + 1, CAPACITY);
+        }
+
+        int count() {
+            return count;
+        }
+
+        void clear() {
+            count = 0;
+            next = 0;
+        }
+
+        /**
+         * "p50=.. p95=.. p99=.. max=.." in milliseconds
+         */
+        String summary() {
+            if (count == 0) return "-";
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            return String.format("p50=%.1f p95=%.1f p99=%.1f max=%.1f",
+                    percentile(50), percentile(95), percentile(99), sorted[count - 1] / 1e6);
+        }
+
+        private double percentile(double p) {
+            int idx = (int) Math.min(count - 1, Math.ceil(p / 100.0 * count) - 1);
+            return sorted[Math.max(0, idx)] / 1e6;
+        }
+    }
+}
@@ -66,7 +66,15 @@ public class ArduinoHandler extends SerialPortHandle implements Runnable, Subjec
 			while (true) { 		// wait for data
 				//System.out.println("Arduino Handler is reading data");
 				byte control = readByte(); // program stalls to read for any byte coming
-				ArduinoPacket pkt = new ArduinoPacket(control); // establish a packet based on your data
+				ArduinoPacket pkt;
+				if (ChordPacket.isChordHeader(control)) {
+					// chord: two lane-mask bytes follow the header (low byte first)
+					byte low = readByte();
+					byte high = readByte();
+					pkt = ChordPacket.fromWire(low, high);
+				} else {
+					pkt = new ArduinoPacket(control); // establish a packet based on your data
+				}
 				System.out.println("[ArduinoHandler " + arduinoID + "] recieved: "+pkt.getPayload());
 				notifyObservers(pkt); //notify your interested observers
 			}
@@ -12,6 +12,9 @@ public class ArduinoPacket {
 	int getPayload() {
 		return (int) (packet_data & 0x3F); //returns full payload data
 	}
+	int getLaneMask() {
+		return 1 << (getPayload() & 0x0F); // AR2 single hit: payload is the lane index (0..15)
+	}
 	
 
 
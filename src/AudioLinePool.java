@@ -0,0 +1,68 @@
+import javax.sound.sampled.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AudioLinePool - Keeps output lines open between songs.
+ *
+ * Opening a SourceDataLine can take hundreds of milliseconds (ALSA/PulseAudio on
+ * Linux) and often clicks, so a line that is no longer needed is stopped and kept
+ * here, keyed by format and buffer size, instead of being closed. The next song in
+ * that format gets it back at once. One idle line is kept per key on the default
+ * output device; close() releases them all.
+ */
+public class AudioLinePool {
+
+    private final Map<String, SourceDataLine> idle = new HashMap<>();
+
+    /**
+     * An open (not started) line for the format, reusing an idle one if there is one
+     *
+     * @param bufferFrames line buffer size, or 0 for the driver's default
+     */
+    public synchronized SourceDataLine acquire(AudioFormat format, int bufferFrames) throws LineUnavailableException {
+        SourceDataLine line = idle.remove(keyFor(format, bufferFrames));
+        if (line != null && line.isOpen()) {
+            System.out.println("[AudioLinePool] Reusing line for " + format);
+            return line;
+        }
+
+        long start = System.nanoTime();
+        line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+        if (bufferFrames > 0) {
+            line.open(format, bufferFrames * format.getFrameSize());
+        } else {
+            line.open(format);
+        }
+        System.out.printf("[AudioLinePool] Opened line for %s in %.1f ms%n", format, (System.nanoTime() - start) / 1e6);
+        return line;
+    }
+
+    /**
+     * Give a line back: it is silenced and kept open for the next song in its format
+     */
+    public synchronized void release(SourceDataLine line, int bufferFrames) {
+        if (line == null) return;
+        line.stop();
+        line.flush();
+        if (!line.isOpen()) return;
+        SourceDataLine previous = idle.put(keyFor(line.getFormat(), bufferFrames), line);
+        if (previous != null && previous != line) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Close every idle line
+     */
+    public synchronized void close() {
+        for (SourceDataLine line : idle.values()) {
+            line.close();
+        }
+        idle.clear();
+    }
+
+    private static String keyFor(AudioFormat format, int bufferFrames) {
+        return format + "/" + bufferFrames;
+    }
+}
@@ -6,6 +6,7 @@
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 import jssc.SerialPortException;
 
 public class BeatController implements Runnable, Observer, BeatSubject {
@@ -15,8 +16,8 @@ public class BeatController implements Runnable, Observer, BeatSubject {
 
     // --- Tunable constants ---
 
-    // ASSUMPTION: Arduino payload is 1..4, we store lanes as 0..3
-    private static final int NUM_LANES = 4;
+    // Arduino payload is the lane index (0..15, see ChordPacket); payload here is lane + 1
+    private static final int NUM_LANES = ChordPacket.MAX_LANES;
 
     // --- Beat definition ---
     public static class Beat {
@@ -63,16 +64,59 @@ public class BeatController implements Runnable, Observer, BeatSubject {
     private int currentBeatIndex = -1;
     private long currentBeatStartMs = 0;
     private long currentBeatDeadlineMs = 0;
+    private long currentBeatStartNanos = 0;
     private volatile int beat_interval = 500;
     private volatile int hit_window = 2000;
 
     private boolean resolved = false;
     private String lastJudgment = null;
 
+    // --- Interval (metronome) mode ---
+    // Beats fire on a fixed grid: anchor + leadIn + k * interval, computed from nanoTime
+    // every time, so late resolutions or slow observers never accumulate into drift.
+
+    /** What to do when the loop reaches a grid slot that is already in the past */
+    public enum CatchUpPolicy {
+        SKIP,       // drop beats whose slot has passed (reported as MISS) and wait for the next slot
+        FIRE_LATE,  // fire the late beat now, keep the original grid (following beats catch up)
+        RESYNC      // fire the late beat now and shift the whole grid by the lateness
+    }
+
+    private static final long SPIN_THRESHOLD_NANOS = 2_000_000;  // busy-wait the last 2 ms
+    private static final long LATE_TOLERANCE_NANOS = 1_000_000;  // later than 1 ms = overrun
+    private static final long SLOT_GUARD_MS = 20;                // hit window closes this long before the next slot
+
+    private volatile boolean intervalMode = false;
+    private volatile long intervalNanos = 9_000_000_000L;
+    private volatile long leadInNanos = 0;
+    private volatile CatchUpPolicy catchUpPolicy = CatchUpPolicy.SKIP;
+
+    // Grid anchor, re-taken whenever interval mode or its spacing changes (guarded by lock)
+    private long gridAnchorNanos = 0;
+    private int gridOriginIndex = 0;
+    private int nextBeatIndex = 0;
+
     public BeatController(Subject subject) {
         this(DEFAULT_BEATMAP, subject);
     }
 
+    /**
+     * Build from a BeatControls rhythm sheet (only the lanes are used; timing comes
+     * from the interval grid or beat_interval)
+     */
+    public BeatController(List<BeatControls.Beat> timeline, Subject subject) {
+        this(toBeats(timeline), subject);
+    }
+
+    private static Beat[] toBeats(List<BeatControls.Beat> timeline) {
+        if (timeline == null) return new Beat[0];
+        Beat[] out = new Beat[timeline.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = new Beat(timeline.get(i).sensorIndex);
+        }
+        return out;
+    }
+
     public BeatController(Beat[] beats, Subject subject) {
         if (beats == null || beats.length == 0) {
             throw new IllegalArgumentException("Beat array must not be empty");
@@ -138,6 +182,168 @@ public class BeatController implements Runnable, Observer, BeatSubject {
         }
     }
 
+    @Override
+    public void notifyBeatmapChanged(String msg) {
+        List<BeatObserver> observersCopy;
+        synchronized (beatObservers) {
+            observersCopy = new ArrayList<>(beatObservers);
+        }
+        for (BeatObserver observer : observersCopy) {
+            observer.onBeatmapChanged(msg);
+        }
+    }
+
+    @Override
+    public void notifyBeatmapIndexChanged(int beatmapIndex) {
+        List<BeatObserver> observersCopy;
+        synchronized (beatObservers) {
+            observersCopy = new ArrayList<>(beatObservers);
+        }
+        for (BeatObserver observer : observersCopy) {
+            observer.onBeatmapIndexChanged(beatmapIndex);
+        }
+    }
+
+    // ===== Interval Mode =====
+
+    /**
+     * Switch interval mode on/off. Turning it on anchors the grid at the current
+     * nanoTime: the next beat fires after the lead-in, then every interval.
+     */
+    public void enableIntervalMode(boolean enabled) {
+        synchronized (lock) {
+            intervalMode = enabled;
+            if (enabled) reanchorGrid();
+        }
+        LockSupport.unpark(thread);
+        System.out.println("[BeatController] Interval mode " + (enabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Set the fixed beat spacing in seconds. Re-anchors the grid if interval mode is on.
+     */
+    public void setIntervalSec(double seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        synchronized (lock) {
+            intervalNanos = Math.round(seconds * 1_000_000_000L);
+            if (intervalMode) reanchorGrid();
+        }
+        LockSupport.unpark(thread);
+        System.out.println("[BeatController] Interval set to " + seconds + "s");
+    }
+
+    /**
+     * Set the delay between anchoring the grid and the first beat (count-in)
+     */
+    public void setLeadInSec(double seconds) {
+        leadInNanos = Math.max(0, Math.round(seconds * 1_000_000_000L));
+    }
+
+    public void setCatchUpPolicy(CatchUpPolicy policy) {
+        if (policy != null) catchUpPolicy = policy;
+    }
+
+    public boolean isIntervalMode() {
+        return intervalMode;
+    }
+
+    // caller holds lock
+    private void reanchorGrid() {
+        if (currentBeat != null && !resolved) {
+            // A beat is already live: it becomes slot 0 and its window is cut at the next slot
+            gridAnchorNanos = currentBeatStartNanos;
+            gridOriginIndex = currentBeatIndex;
+            long nextSlotMs = currentBeatStartMs + intervalNanos / 1_000_000 - slotGuardMs();
+            currentBeatDeadlineMs = Math.min(currentBeatDeadlineMs, nextSlotMs);
+            lock.notifyAll();
+        } else {
+            gridAnchorNanos = System.nanoTime() + leadInNanos;
+            gridOriginIndex = nextBeatIndex;
+        }
+    }
+
+    // Guard before the next slot, scaled down for very short intervals
+    private long slotGuardMs() {
+        return Math.min(SLOT_GUARD_MS, intervalNanos / 4_000_000);
+    }
+
+    // caller holds lock
+    private long slotNanos(int beatIndex) {
+        return gridAnchorNanos + (beatIndex - gridOriginIndex) * intervalNanos;
+    }
+
+    /**
+     * Block until System.nanoTime() reaches target: park for the bulk of the wait,
+     * then spin the last couple of milliseconds so the beat lands on the grid.
+     * Returns false if stopped, or if the grid was re-anchored meanwhile (caller re-reads the slot).
+     */
+    private boolean awaitNanos(long target, long anchorSeen) {
+        while (running) {
+            synchronized (lock) {
+                if (!intervalMode || gridAnchorNanos != anchorSeen) return false;
+            }
+            long remaining = target - System.nanoTime();
+            if (remaining <= 0) return true;
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait for beat i's grid slot and apply the catch-up policy on overruns.
+     * Returns the index of the beat to fire (> i if SKIP dropped some), or -1 if stopped.
+     */
+    private int awaitSlot(int i) {
+        while (running) {
+            long slot;
+            long anchor;
+            synchronized (lock) {
+                if (!intervalMode) return i;
+                slot = slotNanos(i);
+                anchor = gridAnchorNanos;
+            }
+
+            long late = System.nanoTime() - slot;
+            if (late > 0 && i == gridOriginIndex) {
+                // Starting late (thread start-up, no lead-in) is not an overrun: start the grid here
+                synchronized (lock) {
+                    if (gridAnchorNanos == anchor) gridAnchorNanos += late;
+                }
+                return i;
+            }
+            if (late <= LATE_TOLERANCE_NANOS) {
+                if (awaitNanos(slot, anchor)) return i;
+                continue; // re-anchored or mode changed: recompute the slot
+            }
+
+            switch (catchUpPolicy) {
+                case SKIP:
+                    System.out.printf("[BeatController] Beat #%d slot missed by %.3f ms -> skipped%n", i, late / 1e6);
+                    notifyHitResult(beats[i].sensorIndex, "MISS (skipped)");
+                    i++;
+                    if (i >= beats.length) return i;
+                    break;
+                case RESYNC:
+                    synchronized (lock) {
+                        gridAnchorNanos += late;
+                    }
+                    System.out.printf("[BeatController] Beat #%d late by %.3f ms -> grid shifted%n", i, late / 1e6);
+                    return i;
+                case FIRE_LATE:
+                default:
+                    System.out.printf("[BeatController] Beat #%d late by %.3f ms -> firing now%n", i, late / 1e6);
+                    return i;
+            }
+        }
+        return -1;
+    }
+
     // ===== Main Game Loop =====
 
     @Override
@@ -145,17 +351,37 @@ public class BeatController implements Runnable, Observer, BeatSubject {
         System.out.println("[BeatController] Thread started. beats=" + beats.length);
 
         for (int i = 0; i < beats.length && running; i++) {
+            synchronized (lock) {
+                nextBeatIndex = i;
+            }
+
+            // ---- Interval mode: wait for this beat's grid slot ----
+            boolean onGrid = intervalMode;
+            if (onGrid) {
+                i = awaitSlot(i);
+                if (i < 0 || i >= beats.length) break;
+            }
             Beat beat = beats[i];
 
             // ---- Activate this beat immediately ----
+            long activationNanos = System.nanoTime();
             long activationTime = System.currentTimeMillis();
             long deadline = activationTime + hit_window;
+            if (onGrid) {
+                // The window never runs into the next slot, so resolution cannot delay the grid
+                long toNextSlot;
+                synchronized (lock) {
+                    toNextSlot = (slotNanos(i + 1) - System.nanoTime()) / 1_000_000;
+                }
+                deadline = Math.min(deadline, activationTime + Math.max(0, toNextSlot - slotGuardMs()));
+            }
 
             // update state with all needed variables
             synchronized (lock) {
                 currentBeat = beat;
                 currentBeatIndex = i;
                 currentBeatStartMs = activationTime;
+                currentBeatStartNanos = activationNanos;
                 currentBeatDeadlineMs = deadline;
                 resolved = false;
                 lastJudgment = null;
@@ -164,10 +390,21 @@ public class BeatController implements Runnable, Observer, BeatSubject {
             // Notify observers about new beat activation
             notifyBeatObservers(beat.sensorIndex);
 
-            System.out.printf(
-                "[BeatController] Beat #%d START -> lane=%d, t=%d%n",
-                i, beat.sensorIndex+1, activationTime
-            );
+            if (onGrid) {
+                long slotError;
+                synchronized (lock) {
+                    slotError = activationNanos - slotNanos(i);
+                }
+                System.out.printf(
+                    "[BeatController] Beat #%d START -> lane=%d, t=%d, grid error=%.3f ms%n",
+                    i, beat.sensorIndex+1, activationTime, slotError / 1e6
+                );
+            } else {
+                System.out.printf(
+                    "[BeatController] Beat #%d START -> lane=%d, t=%d%n",
+                    i, beat.sensorIndex+1, activationTime
+                );
+            }
 
             // ---- Wait for hit or timeout ----
             synchronized (lock) {
@@ -206,8 +443,8 @@ public class BeatController implements Runnable, Observer, BeatSubject {
                 currentBeatDeadlineMs = 0;
             }
 
-            // ---- Small delay before next beat ----
-            if (running && i < beats.length - 1 && beat_interval > 0) {
+            // ---- Small delay before next beat (interval mode waits for the grid instead) ----
+            if (running && i < beats.length - 1 && beat_interval > 0 && !onGrid) {
                 try {
                     Thread.sleep(beat_interval);
                 } catch (InterruptedException e) {
@@ -228,7 +465,7 @@ public class BeatController implements Runnable, Observer, BeatSubject {
 
     @Override
     public void update(ArduinoPacket pkt) {
-        int payload = (pkt.getPayload() & 0x03) + 1; // assumed 1..4
+        int payload = ChordPacket.lowestLane(pkt.getLaneMask()) + 1; // lane 0..15 -> 1..16 (single-lane beats only)
         
         Beat beatSnapshot;
         int beatIndexSnapshot;
@@ -271,7 +508,7 @@ public class BeatController implements Runnable, Observer, BeatSubject {
         }
 
         // Notify all beat observers about the hit result
-        notifyHitResult(payload - 1, judgment); // Convert payload 1..4 to lane 0..3
+        notifyHitResult(payload - 1, judgment); // Convert payload back to lane index
 
         System.out.printf(
             "[BeatListener] Beat #%d HIT: expectedLane=%d (LED=%d), gotPayload=%d, " +
@@ -297,7 +534,7 @@ public class BeatController implements Runnable, Observer, BeatSubject {
     // --- Helpers ---
 
     private boolean isCorrectLane(Beat beat, int payload) {
-        // ASSUMPTION: payload is 1..4, beat.sensorIndex is 0..3
+        // payload is lane + 1, beat.sensorIndex is the lane
         return payload == beat.sensorIndex + 1;
     }
 
@@ -309,6 +546,7 @@ public class BeatController implements Runnable, Observer, BeatSubject {
         synchronized (lock) {
             lock.notifyAll();
         }
+        LockSupport.unpark(thread);
     }
     
     public boolean isRunning() {
@@ -1,10 +1,28 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Beat Diamond Panel implementing Observer pattern
+ *
+ * Painted only when something changes: observer callbacks and setters call
+ * changed(), and a one-shot timer repaints once when a hit flash or the beatmap
+ * overlay runs out. Fonts, pad geometry and text positions are worked out on the
+ * first paint after a resize (or font/lane-count change) and reused after that,
+ * so an idle station does no drawing at all.
+ *
+ * Callbacks arrive on the BeatJudge and serial threads while the EDT paints, so the
+ * HUD state is one immutable HudState behind an AtomicReference: a change copies
+ * the current snapshot, edits the copy and publishes it with compare-and-set (no
+ * locks; a writer that loses the race redoes its edit on the newer snapshot), and
+ * a paint draws a single snapshot from start to finish. A flash can never be drawn
+ * with another chord's lanes or colour.
+ *
+ * With active rendering (ActiveRenderCanvas) the panel is not shown: it keeps the
+ * HUD state, tells the canvas's render thread about changes and draws through
+ * paintHud.
  */
 public class BeatDiamondPanel extends JPanel implements BeatObserver {
 
@@ -12,131 +30,248 @@ public class BeatDiamondPanel extends JPanel implements BeatObserver {
 
     private static final int FLASH_MS = 350;
 
-    private String title = "Beat the Stress";
-    private int score = 0;
-    private String difficultyText = "Easy";
-
-    private Lane requiredLane = null;
-
-    private Lane lastHitLane = null;
-    private Color lastHitColor = null;
-    private long lastHitUntil = 0;
-    private boolean sequenceEnded = false;
+    private static final Color TITLE_COLOR = new Color(0xF1C40F);
+    private static final Color DIFFICULTY_COLOR = new Color(0xFFD700); // Gold color for difficulty
+    private static final Color MAP_COLOR = new Color(0xDDDDDD);
+    private static final Color SCORE_COLOR = new Color(0x2ECC71);
+    private static final Color PAD_IDLE = new Color(0x222222);
+    private static final Color PAD_REQUIRED = new Color(0xF1C40F);
+    private static final Color PAD_OUTLINE = new Color(0xDDDDDD);
+    private static final Color HIT_GOOD = new Color(0x2ECC71);
+    private static final Color HIT_WRONG = new Color(0xE74C3C);
+    private static final Color LEGEND_COLOR = new Color(0xAAAAAA);
+    private static final Color OVERLAY_SHADE = new Color(0, 0, 0, 170);
+    private static final Color END_SHADE = new Color(0, 0, 0, 150);
+    private static final BasicStroke PAD_STROKE = new BasicStroke(4f);
+    private static final BasicStroke STRIP_STROKE = new BasicStroke(2f);
+    private static final String LEGEND = "Required = Yellow | GOOD = Green | WRONG = Red";
+    private static final String END_MSG = "Sequence Ended";
+
+    // Lanes as bit masks (bit i = lane i) so chords light several pads at once.
+    // Lanes 0..3 are the diamond; lanes 4..15 (bigger cabinets) are drawn as a strip.
+    private static final int DIAMOND_LANES = 4;
 
     // NEW: beatmap-changed overlay
-    private String overlayMsg = null;
-    private long overlayUntil = 0;
     private static final int OVERLAY_MS = 1500;
 
-    // NEW: active beatmap index shown in GUI
-    private int activeBeatmapIndex = 0;
+    // Latest HUD snapshot: written by the game threads, read by whoever paints
+    private final AtomicReference<HudState> state;
 
-    private final Timer repaintTimer;
+    // Set by changed() and cleared by the next paint, so a burst of changes asks Swing once
+    private volatile boolean repaintRequested = false;
+    // Active rendering: told about changes instead of Swing (see setChangeListener)
+    private volatile Runnable changeListener = null;
+    // Fires once when the hit flash or the overlay ends (started and stopped on the EDT)
+    private final Timer expiryTimer;
     private final BeatSubject subject;
 
+    // Paint resources, rebuilt on the EDT when the size, font or lane count changes
+    private Font baseFont;
+    private Font titleFont, difficultyFont, mapFont, scoreFont, padFont, stripFont, legendFont,
+            overlayFont, endFont, finalScoreFont;
+    private int layoutW = -1, layoutH = -1, layoutLanes = -1;
+    private final Rectangle[] padRects = new Rectangle[DIAMOND_LANES];   // by lane index
+    private final int[] padLabelX = new int[DIAMOND_LANES];
+    private final int[] padLabelY = new int[DIAMOND_LANES];
+    private final String[] padLabels = new String[DIAMOND_LANES];
+    private int stripSize, stripX, stripY;
+    private String[] stripLabels = new String[0];
+    private int[] stripLabelX = new int[0];
+    private int stripLabelY;
+    private final Caption titleCaption = new Caption();
+    private final Caption difficultyCaption = new Caption();
+    private final Caption mapCaption = new Caption();
+    private final Caption scoreCaption = new Caption();
+    private final Caption overlayCaption = new Caption();
+    private final Caption endCaption = new Caption();
+    private final Caption finalScoreCaption = new Caption();
+
     public BeatDiamondPanel(BeatSubject subject) {
         this(subject, "Beat The Stress");
     }
 
     public BeatDiamondPanel(BeatSubject subject, String title) {
         this.subject = subject;
-        this.title = title;
+        Draft initial = new Draft();
+        initial.title = title;
+        this.state = new AtomicReference<>(new HudState(initial, 0));
 
         subject.registerObserver(this);
 
         setPreferredSize(new Dimension(420, 520));
         setBackground(Color.BLACK);
 
-        repaintTimer = new Timer(16, (ActionEvent e) -> repaint());
-        repaintTimer.start();
+        expiryTimer = new Timer(0, (ActionEvent e) -> changed());
+        expiryTimer.setRepeats(false);
+    }
+
+    /**
+     * Ask for one repaint after a state change (any thread)
+     */
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+            return;
+        }
+        if (!repaintRequested) {
+            repaintRequested = true;
+            repaint();
+        }
+    }
+
+    /**
+     * Call listener (on the changing thread) instead of repainting the panel;
+     * used by ActiveRenderCanvas, which draws the panel's state itself
+     */
+    void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * The HUD state as of now (any thread)
+     */
+    HudState snapshot() {
+        return state.get();
+    }
+
+    /**
+     * Publish a copy of the current state with change applied, then ask for a repaint.
+     * change may run more than once if another thread publishes first.
+     */
+    private void update(Consumer<Draft> change) {
+        HudState prev;
+        HudState next;
+        do {
+            prev = state.get();
+            Draft draft = new Draft(prev);
+            change.accept(draft);
+            next = new HudState(draft, prev.version + 1);
+        } while (!state.compareAndSet(prev, next));
+        changed();
     }
 
     public void setTitle(String title) {
-        this.title = title;
-        repaint();
+        update(d -> d.title = title);
     }
     
     public void setDifficulty(DifficultyStrategy difficulty) {
-        if (difficulty != null) {
-            int level = difficulty.getLevel();
-            switch (level) {
-                case 1:
-                    difficultyText = "Easy";
-                    break;
-                case 2:
-                    difficultyText = "Medium";
-                    break;
-                case 3:
-                    difficultyText = "Hard";
-                    break;
-                default:
-                    difficultyText = difficulty.getDescription();
-            }
+        if (difficulty == null) {
+            changed();
+            return;
+        }
+        String text;
+        int level = difficulty.getLevel();
+        switch (level) {
+            case 1:
+                text = "Easy";
+                break;
+            case 2:
+                text = "Medium";
+                break;
+            case 3:
+                text = "Hard";
+                break;
+            default:
+                text = difficulty.getDescription();
         }
-        repaint();
+        update(d -> d.difficultyText = text);
     }
 
-    public int getScore() { return score; }
+    /**
+     * Number of pads on the cabinet (4..16); pads beyond the diamond are shown in a strip
+     */
+    public void setLaneCount(int lanes) {
+        int count = Math.max(DIAMOND_LANES, Math.min(lanes, ChordPacket.MAX_LANES));
+        update(d -> d.laneCount = count);
+    }
+
+    public int getScore() { return state.get().score; }
 
-    public void setScore(int score) { this.score = score; }
+    public void setScore(int score) {
+        update(d -> d.score = score);
+    }
 
     public void resetScore() {
-        score = 0;
-        repaint();
+        update(d -> d.score = 0);
     }
 
     // ===== Observer Pattern Implementation =====
 
     @Override
     public void onBeatActivated(int laneIndex) {
-        requiredLane = indexToLane(laneIndex);
-        repaint();
+        onChordActivated(laneIndex >= 0 ? 1 << laneIndex : 0);
+    }
+
+    @Override
+    public void onChordActivated(int laneMask) {
+        if (laneMask == state.get().requiredMask) return;
+        long now = System.nanoTime();
+        update(d -> {
+            d.requiredMask = laneMask;
+            if (laneMask != 0) {
+                d.activatedAtNanos = now;
+            }
+        });
     }
 
     @Override
     public void onHitResult(int laneIndex, String judgment) {
-        lastHitLane = indexToLane(laneIndex);
-        boolean good = "GOOD".equalsIgnoreCase(judgment);
-        lastHitColor = good ? new Color(0x2ECC71) : new Color(0xE74C3C);
-        lastHitUntil = System.currentTimeMillis() + FLASH_MS;
+        onChordResult(laneIndex >= 0 ? 1 << laneIndex : 0, judgment);
+    }
 
-        if (good) {
-            score++;
-        }
-        
-        // Clear the yellow highlight after any hit (correct or wrong)
-        requiredLane = null;
+    @Override
+    public void onChordResult(int laneMask, String judgment) {
+        boolean good = "GOOD".equalsIgnoreCase(judgment);
+        long until = System.currentTimeMillis() + FLASH_MS;
+        update(d -> {
+            d.lastHitMask = laneMask;
+            d.lastHitColor = good ? HIT_GOOD : HIT_WRONG;
+            d.lastHitUntil = until;
+
+            if (good) {
+                d.score++; // a chord scores once
+            }
 
-        repaint();
+            // Clear the yellow highlight after any hit (correct or wrong)
+            d.requiredMask = 0;
+        });
     }
 
     @Override
     public void onSequenceEnd() {
-        sequenceEnded = true;
-        repaint();
+        update(d -> d.sequenceEnded = true);
     }
 
     @Override
     public void onBeatmapChanged(String msg) {
-        overlayMsg = msg;
-        overlayUntil = System.currentTimeMillis() + OVERLAY_MS;
-        sequenceEnded = false;
-        repaint();
+        showOverlay(msg, OVERLAY_MS);
+    }
+
+    /**
+     * Show msg over the HUD for ms (e.g. a level change's count-in)
+     */
+    public void showOverlay(String msg, long ms) {
+        long until = System.currentTimeMillis() + ms;
+        update(d -> {
+            d.overlayMsg = msg;
+            d.overlayUntil = until;
+            d.sequenceEnded = false;
+        });
     }
 
     @Override
     public void onBeatmapIndexChanged(int beatmapIndex) {
-        this.activeBeatmapIndex = beatmapIndex;
-        repaint();
+        if (beatmapIndex == state.get().activeBeatmapIndex) return;
+        update(d -> d.activeBeatmapIndex = beatmapIndex);
     }
 
-    private Lane indexToLane(int idx) {
-        return switch (idx) {
-            case 0 -> Lane.BOTTOM;
-            case 1 -> Lane.LEFT;
-            case 2 -> Lane.RIGHT;
-            case 3 -> Lane.TOP;
-            default -> null;
+    private int laneToIndex(Lane lane) {
+        return switch (lane) {
+            case BOTTOM -> 0;
+            case LEFT -> 1;
+            case RIGHT -> 2;
+            case TOP -> 3;
         };
     }
 
@@ -144,123 +279,292 @@ public class BeatDiamondPanel extends JPanel implements BeatObserver {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         var g2 = (Graphics2D) g.create();
+        long until = paintHud(g2, getWidth(), getHeight());
+        g2.dispose();
+
+        // Nothing animates while a flash or overlay is up: repaint once when the first of them ends
+        if (until != Long.MAX_VALUE) {
+            expiryTimer.setInitialDelay((int) Math.max(1, until - System.currentTimeMillis() + 1));
+            expiryTimer.restart();
+        } else {
+            expiryTimer.stop();
+        }
+    }
+
+    /**
+     * Draw the latest HUD state, as paintHud(g2, w, h, snapshot())
+     */
+    long paintHud(Graphics2D g2, int w, int h) {
+        repaintRequested = false;
+        return paintHud(g2, w, h, state.get());
+    }
+
+    /**
+     * Draw snapshot s of the HUD at w x h over a cleared background (EDT or render thread)
+     *
+     * @return System.currentTimeMillis() at which a flash or overlay ends and the HUD
+     *         must be drawn again, or Long.MAX_VALUE
+     */
+    long paintHud(Graphics2D g2, int w, int h, HudState s) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        int w = getWidth();
-        int h = getHeight();
-        int cx = w / 2;
+        if (getFont() != baseFont) {
+            rebuildFonts();
+        }
+        if (w != layoutW || h != layoutH || s.laneCount != layoutLanes) {
+            rebuildLayout(w, h, s.laneCount);
+        }
 
         // ===== TITLE =====
-        g2.setFont(getFont().deriveFont(Font.BOLD, 36f));
-        g2.setColor(new Color(0xF1C40F));
-        FontMetrics titleFm = g2.getFontMetrics();
-        int titleWidth = titleFm.stringWidth(title);
-        g2.drawString(title, (w - titleWidth) / 2, 50);
+        drawCaption(g2, titleCaption, s.title, titleFont, TITLE_COLOR, 50);
 
         // ===== DIFFICULTY =====
-        g2.setFont(getFont().deriveFont(Font.BOLD, 18f));
-        g2.setColor(new Color(0xFFD700)); // Gold color for difficulty
-        String diffText = "Difficulty: " + difficultyText;
-        FontMetrics diffFm = g2.getFontMetrics();
-        int diffWidth = diffFm.stringWidth(diffText);
-        g2.drawString(diffText, (w - diffWidth) / 2, 75);
+        drawCaption(g2, difficultyCaption, "Difficulty: " + s.difficultyText, difficultyFont, DIFFICULTY_COLOR, 75);
         
         // ===== BEATMAP INDEX (NEW) =====
-        g2.setFont(getFont().deriveFont(Font.BOLD, 16f));
-        g2.setColor(new Color(0xDDDDDD));
-        String mapText = "Beatmap: " + activeBeatmapIndex;
-        FontMetrics mapFm = g2.getFontMetrics();
-        int mapWidth = mapFm.stringWidth(mapText);
-        g2.drawString(mapText, (w - mapWidth) / 2, 95);
+        drawCaption(g2, mapCaption, "Beatmap: " + s.activeBeatmapIndex, mapFont, MAP_COLOR, 95);
 
         // ===== SCORE =====
-        g2.setFont(getFont().deriveFont(Font.BOLD, 24f));
-        g2.setColor(new Color(0x2ECC71));
-        String scoreText = "Score: " + score;
-        FontMetrics scoreFm = g2.getFontMetrics();
-        int scoreWidth = scoreFm.stringWidth(scoreText);
-        g2.drawString(scoreText, (w - scoreWidth) / 2, 120);
+        drawCaption(g2, scoreCaption, "Score: " + s.score, scoreFont, SCORE_COLOR, 120);
 
         // ===== DIAMOND PADS =====
-        int cy = h / 2 + 30;
+        long now = System.currentTimeMillis();
+        boolean flashActive = s.lastHitMask != 0 && now <= s.lastHitUntil;
 
-        int boxW = (int)(w * 0.22);
-        int boxH = (int)(h * 0.22);
-        int gap  = (int)(w * 0.18);
+        g2.setStroke(PAD_STROKE);
+        g2.setFont(padFont);
+        for (int i = 0; i < DIAMOND_LANES; i++) {
+            Rectangle r = padRects[i];
+            int bit = 1 << i;
+
+            g2.setColor(padFill(s, bit, flashActive));
+            g2.fillRoundRect(r.x, r.y, r.width, r.height, 26, 26);
 
-        EnumMap<Lane, Rectangle> rects = new EnumMap<>(Lane.class);
-        rects.put(Lane.TOP,    new Rectangle(cx - boxW/2, cy - gap - boxH, boxW, boxH));
-        rects.put(Lane.LEFT,   new Rectangle(cx - gap - boxW, cy - boxH/2, boxW, boxH));
-        rects.put(Lane.RIGHT,  new Rectangle(cx + gap, cy - boxH/2, boxW, boxH));
-        rects.put(Lane.BOTTOM, new Rectangle(cx - boxW/2, cy + gap, boxW, boxH));
+            g2.setColor(PAD_OUTLINE);
+            g2.drawRoundRect(r.x, r.y, r.width, r.height, 26, 26);
 
-        long now = System.currentTimeMillis();
-        boolean flashActive = lastHitLane != null && now <= lastHitUntil;
+            g2.setColor(Color.WHITE);
+            g2.drawString(padLabels[i], padLabelX[i], padLabelY[i]);
+        }
 
-        for (Lane lane : Lane.values()) {
-            Rectangle r = rects.get(lane);
+        // ===== EXTRA PADS (lanes 5..16 on bigger cabinets) =====
+        if (s.laneCount > DIAMOND_LANES) {
+            g2.setStroke(STRIP_STROKE);
+            g2.setFont(stripFont);
+            for (int i = 0; i < stripLabels.length; i++) {
+                int bit = 1 << (DIAMOND_LANES + i);
+                int x = stripX + i * (stripSize + 4);
+                g2.setColor(padFill(s, bit, flashActive));
+                g2.fillRoundRect(x, stripY, stripSize, stripSize, 8, 8);
+                g2.setColor(PAD_OUTLINE);
+                g2.drawRoundRect(x, stripY, stripSize, stripSize, 8, 8);
+
+                g2.setColor(Color.WHITE);
+                g2.drawString(stripLabels[i], stripLabelX[i], stripLabelY);
+            }
+        }
+
+        g2.setFont(legendFont);
+        g2.setColor(LEGEND_COLOR);
+        g2.drawString(LEGEND, 10, h - 10);
 
-            Color fill = new Color(0x222222);
+        // ===== Beatmap changed overlay =====
+        boolean overlayActive = s.overlayMsg != null && now <= s.overlayUntil;
+        if (overlayActive) {
+            g2.setColor(OVERLAY_SHADE);
+            g2.fillRect(0, 0, w, h);
+            drawCaption(g2, overlayCaption, s.overlayMsg, overlayFont, Color.WHITE, h / 2);
+        }
 
-            if (lane == requiredLane) fill = new Color(0xF1C40F);
+        // ===== sequence ended overlay =====
+        if (s.sequenceEnded) {
+            g2.setColor(END_SHADE);
+            g2.fillRect(0, 0, w, h);
+            drawCaption(g2, endCaption, END_MSG, endFont, Color.WHITE, h / 2);
+            drawCaption(g2, finalScoreCaption, "Final Score: " + s.score, finalScoreFont, Color.WHITE, h / 2 + 40);
+        }
 
-            if (flashActive && lane == lastHitLane) fill = lastHitColor;
+        long until = Long.MAX_VALUE;
+        if (flashActive) until = s.lastHitUntil;
+        if (overlayActive) until = Math.min(until, s.overlayUntil);
+        return until;
+    }
 
-            g2.setColor(fill);
-            g2.fillRoundRect(r.x, r.y, r.width, r.height, 26, 26);
+    private static Color padFill(HudState s, int bit, boolean flashActive) {
+        if (flashActive && (s.lastHitMask & bit) != 0) return s.lastHitColor;
+        if ((s.requiredMask & bit) != 0) return PAD_REQUIRED;
+        return PAD_IDLE;
+    }
 
-            g2.setStroke(new BasicStroke(4f));
-            g2.setColor(new Color(0xDDDDDD));
-            g2.drawRoundRect(r.x, r.y, r.width, r.height, 26, 26);
+    private void drawCaption(Graphics2D g2, Caption caption, String text, Font font, Color color, int y) {
+        caption.update(text, getFontMetrics(font), layoutW);
+        g2.setFont(font);
+        g2.setColor(color);
+        g2.drawString(caption.text, caption.x, y);
+    }
 
-            g2.setFont(getFont().deriveFont(Font.BOLD, 28f));
-            g2.setColor(Color.WHITE);
+    /**
+     * Derive the fonts from the panel's font (and re-measure everything with them)
+     */
+    private void rebuildFonts() {
+        baseFont = getFont();
+        titleFont = baseFont.deriveFont(Font.BOLD, 36f);
+        difficultyFont = baseFont.deriveFont(Font.BOLD, 18f);
+        mapFont = baseFont.deriveFont(Font.BOLD, 16f);
+        scoreFont = baseFont.deriveFont(Font.BOLD, 24f);
+        padFont = baseFont.deriveFont(Font.BOLD, 28f);
+        stripFont = baseFont.deriveFont(Font.BOLD, 12f);
+        legendFont = baseFont.deriveFont(Font.PLAIN, 14f);
+        overlayFont = baseFont.deriveFont(Font.BOLD, 26f);
+        endFont = baseFont.deriveFont(Font.BOLD, 32f);
+        finalScoreFont = baseFont.deriveFont(Font.BOLD, 24f);
+        layoutW = -1;
+    }
 
+    /**
+     * Pad rectangles and label positions for a panel size
+     */
+    private void rebuildLayout(int w, int h, int laneCount) {
+        layoutW = w;
+        layoutH = h;
+        layoutLanes = laneCount;
+        int cx = w / 2;
+        int cy = h / 2 + 30;
+
+        int boxW = (int)(w * 0.22);
+        int boxH = (int)(h * 0.22);
+        int gap  = (int)(w * 0.18);
+
+        FontMetrics padFm = getFontMetrics(padFont);
+        for (Lane lane : Lane.values()) {
+            Rectangle r = switch (lane) {
+                case TOP -> new Rectangle(cx - boxW/2, cy - gap - boxH, boxW, boxH);
+                case LEFT -> new Rectangle(cx - gap - boxW, cy - boxH/2, boxW, boxH);
+                case RIGHT -> new Rectangle(cx + gap, cy - boxH/2, boxW, boxH);
+                case BOTTOM -> new Rectangle(cx - boxW/2, cy + gap, boxW, boxH);
+            };
             String label = switch (lane) {
                 case TOP -> "4";
                 case LEFT -> "2";
                 case RIGHT -> "3";
                 case BOTTOM -> "1";
             };
-
-            FontMetrics fm = g2.getFontMetrics();
-            int tx = r.x + (r.width - fm.stringWidth(label))/2;
-            int ty = r.y + (r.height + fm.getAscent())/2 - 6;
-            g2.drawString(label, tx, ty);
+            int i = laneToIndex(lane);
+            padRects[i] = r;
+            padLabels[i] = label;
+            padLabelX[i] = r.x + (r.width - padFm.stringWidth(label))/2;
+            padLabelY[i] = r.y + (r.height + padFm.getAscent())/2 - 6;
         }
 
-        g2.setFont(getFont().deriveFont(Font.PLAIN, 14f));
-        g2.setColor(new Color(0xAAAAAA));
-        g2.drawString("Required = Yellow | GOOD = Green | WRONG = Red", 10, h - 10);
+        int extra = laneCount - DIAMOND_LANES;
+        stripLabels = new String[extra];
+        stripLabelX = new int[extra];
+        if (extra > 0) {
+            stripSize = Math.min(28, (w - 20) / extra - 4);
+            stripX = (w - extra * (stripSize + 4)) / 2;
+            stripY = h - 30 - stripSize;
+            FontMetrics fm = getFontMetrics(stripFont);
+            for (int i = 0; i < extra; i++) {
+                String label = String.valueOf(DIAMOND_LANES + i + 1);
+                stripLabels[i] = label;
+                stripLabelX[i] = stripX + i * (stripSize + 4) + (stripSize - fm.stringWidth(label)) / 2;
+            }
+            stripLabelY = stripY + (stripSize + fm.getAscent()) / 2 - 2;
+        }
 
-        // ===== Beatmap changed overlay =====
-        if (overlayMsg != null && now <= overlayUntil) {
-            g2.setColor(new Color(0, 0, 0, 170));
-            g2.fillRect(0, 0, w, h);
+        // Captions are centred on the width: measure them again
+        for (Caption c : new Caption[] {titleCaption, difficultyCaption, mapCaption, scoreCaption,
+                overlayCaption, endCaption, finalScoreCaption}) {
+            c.text = null;
+        }
+    }
 
-            g2.setColor(Color.WHITE);
-            g2.setFont(getFont().deriveFont(Font.BOLD, 26f));
-            int mw = g2.getFontMetrics().stringWidth(overlayMsg);
-            g2.drawString(overlayMsg, (w - mw) / 2, h / 2);
+    /**
+     * A line of text centred across the panel; measured only when the text changes
+     */
+    private static class Caption {
+        String text;
+        int x;
+
+        void update(String newText, FontMetrics fm, int w) {
+            if (newText.equals(text)) return;
+            text = newText;
+            x = (w - fm.stringWidth(newText)) / 2;
         }
+    }
 
-        // ===== sequence ended overlay =====
-        if (sequenceEnded) {
-            g2.setColor(new Color(0, 0, 0, 150));
-            g2.fillRect(0, 0, w, h);
+    /**
+     * Everything the HUD shows, as one immutable snapshot; version counts the changes
+     */
+    static final class HudState {
+        final long version;
+        final String title;
+        final int score;
+        final String difficultyText;
+        final int laneCount;
+        final int requiredMask;
+        final int lastHitMask;
+        final Color lastHitColor;
+        final long lastHitUntil;
+        final boolean sequenceEnded;
+        final String overlayMsg;
+        final long overlayUntil;
+        final int activeBeatmapIndex;
+        final long activatedAtNanos; // System.nanoTime() the last chord lit up (0 = none yet)
+
+        private HudState(Draft d, long version) {
+            this.version = version;
+            this.title = d.title;
+            this.score = d.score;
+            this.difficultyText = d.difficultyText;
+            this.laneCount = d.laneCount;
+            this.requiredMask = d.requiredMask;
+            this.lastHitMask = d.lastHitMask;
+            this.lastHitColor = d.lastHitColor;
+            this.lastHitUntil = d.lastHitUntil;
+            this.sequenceEnded = d.sequenceEnded;
+            this.overlayMsg = d.overlayMsg;
+            this.overlayUntil = d.overlayUntil;
+            this.activeBeatmapIndex = d.activeBeatmapIndex;
+            this.activatedAtNanos = d.activatedAtNanos;
+        }
+    }
 
-            g2.setColor(Color.WHITE);
-            g2.setFont(getFont().deriveFont(Font.BOLD, 32f));
-            String msg = "Sequence Ended";
-            int msgWidth = g2.getFontMetrics().stringWidth(msg);
-            g2.drawString(msg, (w - msgWidth) / 2, h / 2);
-
-            g2.setFont(getFont().deriveFont(Font.BOLD, 24f));
-            String finalScore = "Final Score: " + score;
-            int fsWidth = g2.getFontMetrics().stringWidth(finalScore);
-            g2.drawString(finalScore, (w - fsWidth) / 2, h / 2 + 40);
+    /**
+     * Mutable copy of a HudState that an update edits before it is published
+     */
+    private static final class Draft {
+        String title = "Beat the Stress";
+        int score = 0;
+        String difficultyText = "Easy";
+        int laneCount = DIAMOND_LANES;
+        int requiredMask = 0;
+        int lastHitMask = 0;
+        Color lastHitColor = null;
+        long lastHitUntil = 0;
+        boolean sequenceEnded = false;
+        String overlayMsg = null;
+        long overlayUntil = 0;
+        int activeBeatmapIndex = 0; // NEW: active beatmap index shown in GUI
+        long activatedAtNanos = 0;
+
+        Draft() {
         }
 
-        g2.dispose();
+        Draft(HudState s) {
+            title = s.title;
+            score = s.score;
+            difficultyText = s.difficultyText;
+            laneCount = s.laneCount;
+            requiredMask = s.requiredMask;
+            lastHitMask = s.lastHitMask;
+            lastHitColor = s.lastHitColor;
+            lastHitUntil = s.lastHitUntil;
+            sequenceEnded = s.sequenceEnded;
+            overlayMsg = s.overlayMsg;
+            overlayUntil = s.overlayUntil;
+            activeBeatmapIndex = s.activeBeatmapIndex;
+            activatedAtNanos = s.activatedAtNanos;
+        }
     }
 }
@@ -5,6 +5,7 @@ import java.util.List;
 /**
  * BeatGameUI - GUI for the rhythm game with Diamond Layout.
  * Observes BeatJudge for beat events and GameLevelManager for level changes.
+ * The HUD is drawn by Swing, or with active rendering by an ActiveRenderCanvas.
  */
 public class BeatGameUI extends JFrame implements BeatObserver, GameLevelManager.LevelChangeObserver {
     
@@ -23,6 +24,20 @@ public class BeatGameUI extends JFrame implements BeatObserver, GameLevelManager
      * Constructor with custom title
      */
     public BeatGameUI(BeatJudge beatJudge, GameLevelManager levelManager, String title) {
+        this(beatJudge, levelManager, title, 0);
+    }
+    
+    /**
+     * Constructor with active rendering at up to activeRenderFps frames per second (0 = Swing)
+     */
+    public BeatGameUI(BeatJudge beatJudge, GameLevelManager levelManager, int activeRenderFps) {
+        this(beatJudge, levelManager, "Beat the Stress", activeRenderFps);
+    }
+    
+    /**
+     * Constructor with custom title and rendering mode
+     */
+    public BeatGameUI(BeatJudge beatJudge, GameLevelManager levelManager, String title, int activeRenderFps) {
         super("Beat The Stress - Diamond HUD");
         
         if (beatJudge == null || levelManager == null) {
@@ -43,7 +58,11 @@ public class BeatGameUI extends JFrame implements BeatObserver, GameLevelManager
         onLevelChanged(levelManager.getCurrentLevelIndex(), levelManager.getCurrentLevelName());
         
         setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setContentPane(panel);
+        if (activeRenderFps > 0) {
+            add(new ActiveRenderCanvas(panel, activeRenderFps)); // panel only holds the HUD state
+        } else {
+            setContentPane(panel);
+        }
         pack();
         setLocationRelativeTo(null);
         setVisible(true);
@@ -93,6 +112,19 @@ public class BeatGameUI extends JFrame implements BeatObserver, GameLevelManager
         System.out.println("[BeatGameUI] Level changed to: " + levelName);
     }
     
+    @Override
+    public void onTransitionProgress(int levelIndex, GameLevelManager.TransitionStage stage, double progress) {
+        // 3-2-1 over the new level while its song is held, then go
+        if (stage == GameLevelManager.TransitionStage.COUNT_IN) {
+            int beats = levelManager.getCountInBeats();
+            int remaining = beats - (int) Math.round(progress * beats);
+            panel.showOverlay(levelManager.getCurrentLevelName() + " - " + remaining,
+                    GameLevelManager.COUNT_IN_TICK_MS);
+        } else if (stage == GameLevelManager.TransitionStage.START) {
+            panel.showOverlay("Go!", GameLevelManager.COUNT_IN_TICK_MS);
+        }
+    }
+    
     @Override
     public void onPauseStateChanged(boolean isPaused) {
         System.out.println("[BeatGameUI] Pause state: " + (isPaused ? "Paused" : "Resumed"));
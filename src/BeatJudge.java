@@ -13,25 +13,104 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
     
     // Beat definition
     public static class Beat {
-        public final int sensorIndex; // 0..3
+        public final int sensorIndex; // lowest lane of the beat (0..15)
+        public final int laneMask;    // every lane that must be hit (bit i = lane i)
+        public final double timeSec;  // song time in seconds, or -1 if untimed
         
         public Beat(int sensorIndex) {
+            this(sensorIndex, -1);
+        }
+        
+        public Beat(int sensorIndex, double timeSec) {
+            this(sensorIndex, 1 << sensorIndex, timeSec);
+        }
+        
+        private Beat(int sensorIndex, int laneMask, double timeSec) {
             this.sensorIndex = sensorIndex;
+            this.laneMask = laneMask;
+            this.timeSec = timeSec;
+        }
+        
+        /**
+         * A chord: all lanes in laneMask must be hit together (up to 16 lanes)
+         */
+        public static Beat chord(int laneMask, double timeSec) {
+            int mask = laneMask & ChordPacket.ALL_LANES;
+            if (mask == 0) {
+                throw new IllegalArgumentException("Chord needs at least one lane");
+            }
+            return new Beat(ChordPacket.lowestLane(mask), mask, timeSec);
+        }
+        
+        public static Beat chord(int laneMask) {
+            return chord(laneMask, -1);
+        }
+        
+        public boolean isTimed() {
+            return timeSec >= 0;
+        }
+        
+        public boolean isChord() {
+            return ChordPacket.isChord(laneMask);
+        }
+        
+        /**
+         * Convert a BeatControls rhythm sheet (timestamps in song seconds) to judge beats
+         */
+        public static Beat[] fromTimeline(List<BeatControls.Beat> timeline) {
+            if (timeline == null) return new Beat[0];
+            Beat[] out = new Beat[timeline.size()];
+            for (int i = 0; i < out.length; i++) {
+                BeatControls.Beat b = timeline.get(i);
+                out[i] = new Beat(b.sensorIndex, b.timestamp);
+            }
+            return out;
         }
         
         @Override
         public String toString() {
-            return "Beat{lane=" + sensorIndex + "}";
+            String lanes = isChord() ? "lanes=0x" + Integer.toHexString(laneMask) : "lane=" + sensorIndex;
+            return isTimed() ? "Beat{" + lanes + ", t=" + timeSec + "s}" : "Beat{" + lanes + "}";
+        }
+    }
+    
+    /**
+     * A beatmap read one beat at a time, so a chart mapped from disk (CompiledChart)
+     * is never copied onto the heap as a whole
+     */
+    public interface BeatSequence {
+        BeatSequence EMPTY = of(new Beat[0]);
+        
+        int size();
+        
+        Beat get(int index);
+        
+        /**
+         * An in-memory beatmap (the array is not copied)
+         */
+        static BeatSequence of(Beat[] beats) {
+            return new BeatSequence() {
+                @Override
+                public int size() {
+                    return beats.length;
+                }
+                
+                @Override
+                public Beat get(int index) {
+                    return beats[index];
+                }
+            };
         }
     }
     
     // Current beatmap
-    private volatile Beat[] beats;
+    private volatile BeatSequence beats;
     private volatile int beatmapIndex = 0;
     
     // Core fields
-    private final GameplaySubject gameplaySubject;
-    private final Thread thread;
+    private final Subject gameplaySubject;
+    private final Thread thread;      // null when a VirtualClock runs the loop
+    private final GameClock clock;
     private volatile boolean running = true;
     private GameLevelManager levelManager; // Optional reference for sequence end notification
     
@@ -50,10 +129,27 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
     // Restart flag when beatmap changes
     private volatile boolean restartRequested = false;
     
+    // Timeline mode: beats are activated from the song position instead of wall-clock sleeps
+    private static final long TIMELINE_POLL_MS = 5; // how often the song clock is re-read while waiting
+    private volatile boolean timelineMode = false;
+    private volatile SongClock songClock = null;
+    private double currentBeatTimeSec = -1;
+    private int currentHeldMask = 0; // chord lanes already hit for the current beat
+    
+    // Measured input latency of the pad device (LatencyCalibrator), subtracted from hit times
+    private volatile double inputOffsetMs = 0.0;
+    
     /**
      * Constructor - registers with GameplaySubject
      */
-    public BeatJudge(GameplaySubject gameplaySubject, double interBeatDelay) {
+    public BeatJudge(Subject gameplaySubject, double interBeatDelay) {
+        this(gameplaySubject, interBeatDelay, GameClock.SYSTEM);
+    }
+    
+    /**
+     * Constructor with an explicit clock (VirtualClock for headless simulation)
+     */
+    public BeatJudge(Subject gameplaySubject, double interBeatDelay, GameClock clock) {
         if (gameplaySubject == null) {
             throw new IllegalArgumentException("GameplaySubject cannot be null");
         }
@@ -64,10 +160,10 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         gameplaySubject.registerObserver(this);
         
         // Initialize with empty beatmap (will be set by GameLevelManager)
-        this.beats = new Beat[0];
+        this.beats = BeatSequence.EMPTY;
         
-        thread = new Thread(this, "BeatJudgeThread");
-        thread.start();
+        this.clock = (clock != null) ? clock : GameClock.SYSTEM;
+        thread = this.clock.start(this, "BeatJudgeThread");
     }
     
     /**
@@ -77,11 +173,53 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         this.levelManager = levelManager;
     }
     
+    /**
+     * Set the song clock used in timeline mode (normally the RealtimeTempoPlayer)
+     */
+    public void setSongClock(SongClock songClock) {
+        this.songClock = songClock;
+    }
+    
+    /**
+     * Enable/disable timeline mode. When enabled, timed beats are activated and
+     * judged against the song position, so they follow tempo changes and pauses.
+     * Untimed beats (or no song clock) still use the wall-clock inter-beat delay.
+     */
+    public void setTimelineMode(boolean enabled) {
+        this.timelineMode = enabled;
+        System.out.println("[BeatJudge] Timeline mode " + (enabled ? "enabled" : "disabled"));
+    }
+    
+    public boolean isTimelineMode() {
+        return timelineMode;
+    }
+    
+    /**
+     * Set the input latency compensation in ms (positive = hits are reported late).
+     * Hits are moved back by this amount before windowing, and timeouts wait this
+     * much longer so a hit made in time but reported late is not already a MISS.
+     */
+    public void setInputOffsetMs(double offsetMs) {
+        this.inputOffsetMs = offsetMs;
+        System.out.printf("[BeatJudge] Input offset set to %.2f ms%n", offsetMs);
+    }
+    
+    public double getInputOffsetMs() {
+        return inputOffsetMs;
+    }
+    
     /**
      * Set the current beatmap
      */
-    public synchronized void setBeatmap(Beat[] newBeats, int beatmapIndex) {
-        this.beats = newBeats != null ? newBeats.clone() : new Beat[0];
+    public void setBeatmap(Beat[] newBeats, int beatmapIndex) {
+        setBeatmap(newBeats != null ? BeatSequence.of(newBeats.clone()) : BeatSequence.EMPTY, beatmapIndex);
+    }
+    
+    /**
+     * Set the current beatmap from a sequence read beat by beat as the level plays
+     */
+    public synchronized void setBeatmap(BeatSequence newBeats, int beatmapIndex) {
+        this.beats = newBeats != null ? newBeats : BeatSequence.EMPTY;
         this.beatmapIndex = beatmapIndex;
         restartRequested = true;
         notifyBeatmapIndexChanged(beatmapIndex);
@@ -94,11 +232,9 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         }
         
         // Interrupt the thread if it's sleeping to wake it up immediately
-        if (thread != null && thread.isAlive()) {
-            thread.interrupt();
-        }
+        clock.interrupt(thread);
         
-        System.out.println("[BeatJudge] Beatmap set -> index=" + beatmapIndex + ", beats=" + beats.length);
+        System.out.println("[BeatJudge] Beatmap set -> index=" + beatmapIndex + ", beats=" + beats.size());
     }
     
     /**
@@ -162,6 +298,36 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         for (BeatObserver o : copy) o.onHitResult(laneIndex, judgment);
     }
     
+    /**
+     * Activation for any beat: single lanes go through onBeatActivated, chords through onChordActivated
+     */
+    private void notifyActivation(int laneMask) {
+        if (!ChordPacket.isChord(laneMask)) {
+            notifyBeatObservers(ChordPacket.lowestLane(laneMask));
+            return;
+        }
+        List<BeatObserver> copy;
+        synchronized (beatObservers) {
+            copy = new ArrayList<>(beatObservers);
+        }
+        for (BeatObserver o : copy) o.onChordActivated(laneMask);
+    }
+    
+    /**
+     * Result for any beat: single lanes go through onHitResult, chords through onChordResult
+     */
+    private void notifyResult(int laneMask, String judgment) {
+        if (!ChordPacket.isChord(laneMask)) {
+            notifyHitResult(ChordPacket.lowestLane(laneMask), judgment);
+            return;
+        }
+        List<BeatObserver> copy;
+        synchronized (beatObservers) {
+            copy = new ArrayList<>(beatObservers);
+        }
+        for (BeatObserver o : copy) o.onChordResult(laneMask, judgment);
+    }
+    
     @Override
     public void notifySequenceEnd() {
         List<BeatObserver> copy;
@@ -198,38 +364,43 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         while (running) {
         	while (paused && running) {
         	    try {
-        	        Thread.sleep(100);
+        	        clock.sleep(100);
         	    } catch (InterruptedException e) {
         	        // just re-check paused/running
         	    }
         	}
             restartRequested = false;
-            Beat[] localMap = beats; // snapshot for this pass
+            BeatSequence localMap = beats; // snapshot for this pass
             notifyBeatmapIndexChanged(beatmapIndex);
             
-            if (localMap.length == 0) {
+            if (localMap.size() == 0) {
                 System.out.println("[BeatJudge] No beatmap loaded, waiting...");
                 try {
-                    Thread.sleep(1000);
+                    clock.sleep(1000);
                 } catch (InterruptedException e) {
                     if (!running) break;
                 }
                 continue;
             }
             
-            System.out.println("[BeatJudge] Starting sequence. beats=" + localMap.length);
+            System.out.println("[BeatJudge] Starting sequence. beats=" + localMap.size());
             
-            for (int i = 0; i < localMap.length && running; i++) {
+            for (int i = 0; i < localMap.size() && running; i++) {
             	while (paused && running && !restartRequested) {
-                    try { Thread.sleep(100); }
+                    try { clock.sleep(100); }
                     catch (InterruptedException e) {}
                 }
             	
                 if (!running || restartRequested) break;
                 
-                Beat beat = localMap[i];
+                Beat beat = localMap.get(i);
+                SongClock song = songClock;
+                boolean onTimeline = timelineMode && song != null && beat.isTimed();
+                
+                // Timeline mode: hold the beat back until the song reaches the start of its window
+                if (onTimeline && !awaitSongTime(song, beat.timeSec - halfWindowSongSec(song))) break;
                 
-                long activationTime = System.currentTimeMillis();
+                long activationTime = clock.currentTimeMillis();
                 long deadline = activationTime + hit_window;
                 
                 synchronized (lock) {
@@ -237,31 +408,41 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
                     currentBeatIndex = i;
                     currentBeatStartMs = activationTime;
                     currentBeatDeadlineMs = deadline;
+                    currentBeatTimeSec = onTimeline ? beat.timeSec : -1;
+                    currentHeldMask = 0;
                     resolved = false;
                     lastJudgment = null;
                 }
                 
-                notifyBeatObservers(beat.sensorIndex);
+                notifyActivation(beat.laneMask);
                 
                 System.out.printf(
-                        "[BeatJudge] Beat #%d START -> lane=%d, t=%d%n",
-                        i, beat.sensorIndex + 1, activationTime
+                        "[BeatJudge] Beat #%d START -> %s, t=%d%n",
+                        i, beat, activationTime
                 );
                 
                 synchronized (lock) {
                     while (!resolved && running && !restartRequested) {
-                        long now = System.currentTimeMillis();
-                        long remaining = currentBeatDeadlineMs - now;
+                        long remaining;
+                        if (onTimeline) {
+                            // Deadline is in song time, so re-read the clock instead of trusting one long wait
+                            double songRemaining = beat.timeSec + halfWindowSongSec(song) - song.getSongTimeSec();
+                            remaining = (long) Math.ceil(songRemaining * 1000.0 / Math.max(0.1, song.getTempo()));
+                        } else {
+                            remaining = currentBeatDeadlineMs - clock.currentTimeMillis();
+                        }
+                        // Hits from a slow device arrive late: keep the window open for them
+                        remaining += Math.max(0, Math.round(inputOffsetMs));
                         
                         if (remaining <= 0) {
                             lastJudgment = "MISS (timeout)";
                             resolved = true;
-                            notifyHitResult(beat.sensorIndex, lastJudgment);
+                            notifyResult(beat.laneMask, lastJudgment);
                             break;
                         }
                         
                         try {
-                            lock.wait(remaining);
+                            clock.waitOn(lock, onTimeline ? Math.min(remaining, TIMELINE_POLL_MS) : remaining);
                         } catch (InterruptedException e) {
                             if (!running) break;
                         }
@@ -278,13 +459,15 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
                     currentBeatIndex = -1;
                     currentBeatStartMs = 0;
                     currentBeatDeadlineMs = 0;
+                    currentBeatTimeSec = -1;
                 }
                 
                 // Skip inter-beat delay if wrong tile was pressed (move to next beat immediately)
                 boolean wrongLane = lastJudgment != null && lastJudgment.contains("WRONG LANE");
                 
                 // Inter-beat delay - use chunked sleep to check restartRequested periodically
-                if (running && i < localMap.length - 1 && beat_interval > 0 && !wrongLane) {
+                // (not needed on the timeline: the next beat waits for its own song time)
+                if (running && i < localMap.size() - 1 && beat_interval > 0 && !wrongLane && !onTimeline) {
                     try {
                         // Sleep in chunks to allow immediate response to restartRequested
                         long remainingDelay = (long) beat_interval;
@@ -292,7 +475,7 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
                         
                         while (remainingDelay > 0 && running && !restartRequested) {
                             long sleepTime = Math.min(chunkSize, remainingDelay);
-                            Thread.sleep(sleepTime);
+                            clock.sleep(sleepTime);
                             remainingDelay -= sleepTime;
                         }
                         
@@ -312,12 +495,13 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
                     currentBeatIndex = -1;
                     currentBeatStartMs = 0;
                     currentBeatDeadlineMs = 0;
+                    currentBeatTimeSec = -1;
                     resolved = true;
                     lastJudgment = null;
                 }
                 
                 // Clear the beatmap so no beats are active
-                this.beats = new Beat[0];
+                this.beats = BeatSequence.EMPTY;
                 
                 notifySequenceEnd();
                 // Notify GameLevelManager to stop music
@@ -332,20 +516,53 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         System.out.println("[BeatJudge] Thread stopped.");
     }
     
+    /**
+     * Half of the hit window expressed in song seconds. The window is defined in
+     * wall-clock ms, so at 1.3x tempo it covers 1.3x as much of the song.
+     */
+    private double halfWindowSongSec(SongClock song) {
+        return hit_window / 2000.0 * Math.max(0.1, song.getTempo());
+    }
+    
+    /**
+     * Wait until the song clock reaches targetSec. Stops early (returning false)
+     * if the judge is stopped or the beatmap is replaced. While the song is paused
+     * the clock does not advance, so the wait simply continues.
+     */
+    private boolean awaitSongTime(SongClock song, double targetSec) {
+        synchronized (lock) {
+            while (running && !restartRequested) {
+                double ahead = targetSec - song.getSongTimeSec();
+                if (ahead <= 0) return true;
+                
+                long waitMs = (long) Math.ceil(ahead * 1000.0 / Math.max(0.1, song.getTempo()));
+                try {
+                    clock.waitOn(lock, Math.max(1, Math.min(waitMs, TIMELINE_POLL_MS)));
+                } catch (InterruptedException e) {
+                    // re-check running/restartRequested
+                }
+            }
+        }
+        return false;
+    }
+    
     // ===== Observer Implementation (GameplaySubject packets) =====
     
     @Override
     public void update(ArduinoPacket pkt) {
         int arduinoId = pkt.getArduinoID();
-        int payload = (pkt.getPayload() & 0x03) + 1; // assumed 1..4
         
         // Only process Arduino2 (gameplay hits)
         if (arduinoId != 2) return;
         
+        // One pad or a whole chord (ChordCoalescer / chord packets), as a lane mask
+        int hitMask = pkt.getLaneMask() & ChordPacket.ALL_LANES;
+        
         Beat beatSnapshot;
         int beatIndexSnapshot;
         long startSnapshot;
         long deadlineSnapshot;
+        double beatTimeSnapshot;
         boolean alreadyResolved;
         
         synchronized (lock) {
@@ -353,44 +570,72 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
             beatIndexSnapshot = currentBeatIndex;
             startSnapshot = currentBeatStartMs;
             deadlineSnapshot = currentBeatDeadlineMs;
+            beatTimeSnapshot = currentBeatTimeSec;
             alreadyResolved = resolved;
         }
         
-        long now = System.currentTimeMillis();
+        // Move the hit back to when the pad was actually pressed: device latency,
+        // plus the coalescing delay for chords (the packet carries its first hit time)
+        long receivedAt = clock.currentTimeMillis();
+        long lagMs = Math.round(inputOffsetMs);
+        if (pkt instanceof ChordPacket && ((ChordPacket) pkt).getFirstHitMs() >= 0) {
+            lagMs += receivedAt - ((ChordPacket) pkt).getFirstHitMs();
+        }
+        long now = receivedAt - lagMs;
+        
+        // On the timeline the window closes at a song position, not a wall-clock time
+        SongClock song = songClock;
+        boolean afterWindow;
+        if (beatTimeSnapshot >= 0 && song != null) {
+            double hitSongSec = song.getSongTimeSec() - lagMs / 1000.0 * song.getTempo();
+            afterWindow = hitSongSec > beatTimeSnapshot + halfWindowSongSec(song);
+        } else {
+            afterWindow = now > deadlineSnapshot;
+        }
         
         if (beatSnapshot == null || alreadyResolved) {
             System.out.printf(
-                    "[BeatJudge] Stray hit: payload=%d at t=%d (no active beat)%n",
-                    payload, now
+                    "[BeatJudge] Stray hit: lanes=0x%x at t=%d (no active beat)%n",
+                    hitMask, now
             );
             return;
         }
         
-        boolean correctLane = isCorrectLane(beatSnapshot, payload);
         long deltaMs = now - startSnapshot;
         
+        // Resolve the whole chord in one pass: any lane outside the beat is wrong,
+        // the beat is GOOD once every one of its lanes has been hit
         String judgment;
-        if (now > deadlineSnapshot) {
-            judgment = "MISS (too late - after window)";
-        } else if (!correctLane) {
-            judgment = "WRONG LANE";
-        } else {
-            judgment = "GOOD";
+        int held;
+        synchronized (lock) {
+            if (resolved || currentBeat != beatSnapshot) return;
+            held = currentHeldMask | hitMask;
+            if (afterWindow) {
+                judgment = "MISS (too late - after window)";
+            } else if (!isCorrectLane(beatSnapshot, hitMask)) {
+                judgment = "WRONG LANE";
+            } else if (held == beatSnapshot.laneMask) {
+                judgment = "GOOD";
+            } else {
+                // Part of a chord: keep the beat open for the remaining lanes
+                currentHeldMask = held;
+                judgment = null;
+            }
         }
         
-        // GUI feedback
-        notifyHitResult(payload - 1, judgment);
-        
         System.out.printf(
-                "[BeatJudge] Beat #%d HIT: expectedLane=%d (LED=%d), gotPayload=%d, " +
-                        "delta=%d ms -> %s%n",
+                "[BeatJudge] Beat #%d HIT: expected=0x%x, got=0x%x (held 0x%x), delta=%d ms -> %s%n",
                 beatIndexSnapshot,
-                beatSnapshot.sensorIndex,
-                beatSnapshot.sensorIndex + 1,
-                payload,
+                beatSnapshot.laneMask,
+                hitMask,
+                held,
                 deltaMs,
-                judgment
+                judgment != null ? judgment : "PARTIAL"
         );
+        if (judgment == null) return;
+        
+        // GUI feedback (the lanes the player actually hit for a wrong lane)
+        notifyResult("WRONG LANE".equals(judgment) ? hitMask : beatSnapshot.laneMask, judgment);
         
         synchronized (lock) {
             if (!resolved) {
@@ -401,8 +646,8 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
         }
     }
     
-    private boolean isCorrectLane(Beat beat, int payload) {
-        return payload == beat.sensorIndex + 1;
+    private boolean isCorrectLane(Beat beat, int hitMask) {
+        return hitMask != 0 && (hitMask & ~beat.laneMask) == 0;
     }
     
     // ===== Utility Methods =====
@@ -434,7 +679,7 @@ public class BeatJudge implements Runnable, Observer, BeatSubject {
     public void resumeBeats() {
         paused = false;
         // wake thread if it's sleeping for beat_interval or idle
-        if (thread != null && thread.isAlive()) thread.interrupt();
+        clock.interrupt(thread);
         synchronized (lock) {
             lock.notifyAll();
         }
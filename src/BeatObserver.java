@@ -4,4 +4,14 @@ public interface BeatObserver {
     void onSequenceEnd();
     void onBeatmapChanged(String msg);
     void onBeatmapIndexChanged(int beatmapIndex);
+    
+    // Chords (several lanes at once, bit i = lane i). Observers that only know
+    // single lanes see the lowest lane of the chord.
+    default void onChordActivated(int laneMask) {
+        onBeatActivated(Integer.numberOfTrailingZeros(laneMask));
+    }
+    
+    default void onChordResult(int laneMask, String judgment) {
+        onHitResult(Integer.numberOfTrailingZeros(laneMask), judgment);
+    }
 }
@@ -0,0 +1,477 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * BeatmapGenerator - Charts a song automatically from its audio.
+ *
+ * Pipeline per song:
+ *   1. STFT of the mono mix (Hann window, 1024 samples, hop 512)
+ *   2. Spectral flux (rise of log magnitude per bin) as the onset envelope
+ *   3. Onsets = local peaks of the flux above a moving threshold
+ *   4. Tempo from the autocorrelation of the flux, beat phase from the grid that
+ *      lines up with the most flux
+ *   5. Onsets snapped to a grid of DifficultyStrategy.getChartNoteSpacing() beats,
+ *      strongest onset per slot, lanes picked from the spectral centroid
+ *      (low sounds left, bright sounds right), loud accents doubled into chords on Hard
+ *
+ * Steps 1-4 run once per song; step 5 runs for every difficulty, and each result is
+ * written as a text chart for that level next to the song (music/KOTON.2.chart,
+ * "# generated" on the first line) and compiled with ChartCompiler. Hand-written
+ * charts are never overwritten unless forced, and a song with a hand-written shared
+ * chart (music/KOTON.chart) is left alone. Songs are processed in parallel on a
+ * fork/join pool.
+ */
+public class BeatmapGenerator {
+
+    private static final int FRAME_SIZE = 1024;
+    private static final int HOP_SIZE = 512;
+    private static final int LANES = 4;
+
+    private static final double MIN_ONSET_GAP_SEC = 0.05;
+    private static final int PEAK_RADIUS = 3;          // frames either side a peak must dominate
+    private static final int THRESHOLD_RADIUS = 16;    // frames in the moving-mean threshold
+    private static final double THRESHOLD_DELTA = 1.0; // in standard deviations of the flux
+
+    private static final double MIN_BPM = 60, MAX_BPM = 200, PREFERRED_BPM = 120;
+    private static final double PERIOD_SEARCH = 0.02;      // +-2% around the autocorrelation peak
+    private static final double PERIOD_STEP = 0.01;        // frames
+    private static final double SNAP_TOLERANCE_SEC = 0.07; // onsets further from the grid are dropped
+    private static final double PHASE_GAIN = 0.2;          // how fast the grid follows the music
+    private static final double LEAD_IN_SEC = 1.0;
+    private static final double CHORD_PERCENTILE = 0.9;
+
+    static final String GENERATED_MARKER = "# generated";
+
+    /**
+     * Result of analysing one song
+     */
+    public static class Analysis {
+        public final double frameRate;     // flux frames per second
+        public final float[] flux;         // onset envelope, z-scored
+        public final float[] centroidHz;   // spectral centroid per frame
+        public final int[] onsetFrames;
+        public final double bpm;
+        public final double firstBeatSec;
+
+        Analysis(double frameRate, float[] flux, float[] centroidHz, int[] onsetFrames, double bpm, double firstBeatSec) {
+            this.frameRate = frameRate;
+            this.flux = flux;
+            this.centroidHz = centroidHz;
+            this.onsetFrames = onsetFrames;
+            this.bpm = bpm;
+            this.firstBeatSec = firstBeatSec;
+        }
+    }
+
+    /**
+     * One charted note: song time and lane mask
+     */
+    public static class Note {
+        public final double timeSec;
+        public final int laneMask;
+
+        Note(double timeSec, int laneMask) {
+            this.timeSec = timeSec;
+            this.laneMask = laneMask;
+        }
+    }
+
+    // ===== Analysis =====
+
+    public static Analysis analyze(DecodedAudio audio) {
+        float[] mono = audio.toMono();
+        double frameRate = audio.getSampleRate() / HOP_SIZE;
+        int frames = (mono.length < FRAME_SIZE) ? 0 : 1 + (mono.length - FRAME_SIZE) / HOP_SIZE;
+
+        float[] flux = new float[frames];
+        float[] centroid = new float[frames];
+        spectralFlux(mono, audio.getSampleRate(), flux, centroid);
+        normalize(flux);
+
+        int[] onsets = pickOnsets(flux, frameRate);
+        double[] grid = estimateGrid(flux, frameRate);
+        double bpm = 60.0 * frameRate / grid[0];
+        return new Analysis(frameRate, flux, centroid, onsets, bpm, frameTimeSec(grid[1], frameRate));
+    }
+
+    /**
+     * Song time of a flux frame: the centre of its analysis window
+     */
+    static double frameTimeSec(double frame, double frameRate) {
+        return (frame + (double) FRAME_SIZE / HOP_SIZE / 2) / frameRate;
+    }
+
+    /**
+     * Half-wave rectified rise in log magnitude, summed over bins, per STFT frame
+     */
+    private static void spectralFlux(float[] mono, float sampleRate, float[] flux, float[] centroid) {
+        Fft fft = new Fft(FRAME_SIZE);
+        int bins = FRAME_SIZE / 2 + 1;
+        double[] window = new double[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / FRAME_SIZE);
+        }
+        double[] re = new double[FRAME_SIZE];
+        double[] im = new double[FRAME_SIZE];
+        double[] prevLog = new double[bins];
+        double[] log = new double[bins];
+        double binHz = sampleRate / FRAME_SIZE;
+
+        for (int t = 0; t < flux.length; t++) {
+            int start = t * HOP_SIZE;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                re[i] = mono[start + i] * window[i];
+                im[i] = 0;
+            }
+            fft.forward(re, im);
+
+            double rise = 0, weighted = 0, total = 0;
+            for (int k = 0; k < bins; k++) {
+                double mag = Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+                log[k] = Math.log1p(100 * mag); // compress so quiet bins still count
+                if (t > 0 && log[k] > prevLog[k]) rise += log[k] - prevLog[k];
+                weighted += k * binHz * mag;
+                total += mag;
+            }
+            flux[t] = (float) rise;
+            centroid[t] = (total > 0) ? (float) (weighted / total) : 0f;
+
+            double[] swap = prevLog;
+            prevLog = log;
+            log = swap;
+        }
+    }
+
+    private static void normalize(float[] x) {
+        if (x.length == 0) return;
+        double mean = 0;
+        for (float v : x) mean += v;
+        mean /= x.length;
+        double var = 0;
+        for (float v : x) var += (v - mean) * (v - mean);
+        double sd = Math.sqrt(var / x.length);
+        if (sd == 0) sd = 1;
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (float) ((x[i] - mean) / sd);
+        }
+    }
+
+    private static int[] pickOnsets(float[] flux, double frameRate) {
+        int minGap = Math.max(1, (int) Math.round(MIN_ONSET_GAP_SEC * frameRate));
+        int[] onsets = new int[flux.length];
+        int n = 0;
+        int last = -minGap;
+
+        for (int t = 0; t < flux.length; t++) {
+            if (flux[t] <= 0) continue;
+
+            boolean peak = true;
+            for (int j = Math.max(0, t - PEAK_RADIUS); j <= Math.min(flux.length - 1, t + PEAK_RADIUS) && peak; j++) {
+                if (flux[j] > flux[t]) peak = false;
+            }
+            if (!peak) continue;
+
+            int lo = Math.max(0, t - THRESHOLD_RADIUS);
+            int hi = Math.min(flux.length - 1, t + THRESHOLD_RADIUS);
+            double mean = 0;
+            for (int j = lo; j <= hi; j++) mean += flux[j];
+            mean /= (hi - lo + 1);
+
+            if (flux[t] >= mean + THRESHOLD_DELTA && t - last >= minGap) {
+                onsets[n++] = t;
+                last = t;
+            }
+        }
+        return Arrays.copyOf(onsets, n);
+    }
+
+    /**
+     * Beat period and phase of the first beat, both in flux frames.
+     * The autocorrelation is weighted towards PREFERRED_BPM so a song is not
+     * charted at double or half its felt tempo.
+     */
+    private static double[] estimateGrid(float[] flux, double frameRate) {
+        int minLag = (int) Math.floor(60.0 * frameRate / MAX_BPM);
+        int maxLag = (int) Math.ceil(60.0 * frameRate / MIN_BPM);
+        if (flux.length <= maxLag * 2) {
+            return new double[] { 60.0 * frameRate / PREFERRED_BPM, 0 };
+        }
+
+        double[] env = new double[flux.length];
+        for (int i = 0; i < env.length; i++) env[i] = Math.max(0, flux[i]);
+
+        double[] score = new double[maxLag + 2];
+        int best = minLag;
+        for (int lag = minLag; lag <= maxLag + 1; lag++) {
+            double acf = 0;
+            for (int t = 0; t + lag < env.length; t++) acf += env[t] * env[t + lag];
+            acf /= (env.length - lag);
+            double octaves = Math.log(60.0 * frameRate / lag / PREFERRED_BPM) / Math.log(2);
+            score[lag] = acf * Math.exp(-0.5 * octaves * octaves);
+            if (lag <= maxLag && score[lag] > score[best]) best = lag;
+        }
+
+        // Parabolic interpolation around the peak for a sub-frame period
+        double period = best;
+        if (best > minLag) {
+            double a = score[best - 1], b = score[best], c = score[best + 1];
+            double denom = a - 2 * b + c;
+            if (denom < 0) period = best + 0.5 * (a - c) / denom;
+        }
+
+        // The autocorrelation only resolves the period to a fraction of a frame, which
+        // drifts by a whole step over a long song: refine period and phase together
+        // by finding the beat comb that lands on the most flux
+        double bestPeriod = period, bestPhase = 0, bestSum = -1;
+        for (double p = period * (1 - PERIOD_SEARCH); p <= period * (1 + PERIOD_SEARCH); p += PERIOD_STEP) {
+            for (int phase = 0; phase < (int) Math.ceil(p); phase++) {
+                double sum = 0;
+                for (double t = phase; Math.round(t) < env.length; t += p) sum += env[(int) Math.round(t)];
+                if (sum > bestSum) {
+                    bestSum = sum;
+                    bestPeriod = p;
+                    bestPhase = phase;
+                }
+            }
+        }
+        return new double[] { bestPeriod, bestPhase };
+    }
+
+    // ===== Charting =====
+
+    /**
+     * Snap onsets to the difficulty's note grid and assign lanes
+     */
+    public static List<Note> chart(Analysis a, DifficultyStrategy difficulty) {
+        double beatSec = 60.0 / a.bpm;
+        double stepSec = beatSec * difficulty.getChartNoteSpacing();
+        double tolerance = Math.min(SNAP_TOLERANCE_SEC, stepSec / 2);
+
+        // Strongest onset per grid slot; the grid phase follows the onsets (a simple
+        // phase-locked loop) so a slightly wrong tempo does not drift over a long song
+        // (slot -> {onset frame, snapped time})
+        TreeMap<Long, double[]> slots = new TreeMap<>();
+        double phase = a.firstBeatSec;
+        for (int frame : a.onsetFrames) {
+            double t = frameTimeSec(frame, a.frameRate);
+            long slot = Math.round((t - phase) / stepSec);
+            double gridSec = phase + slot * stepSec;
+            double error = t - gridSec;
+            if (Math.abs(error) > tolerance) continue;
+
+            phase += PHASE_GAIN * error;
+            double[] held = slots.get(slot);
+            if (held == null || a.flux[frame] > a.flux[(int) held[0]]) slots.put(slot, new double[] { frame, gridSec });
+        }
+        if (slots.isEmpty()) return new ArrayList<>();
+
+        // Lane thresholds from centroid quartiles of the charted onsets, so every lane gets used
+        float[] centroids = new float[slots.size()];
+        float[] strengths = new float[slots.size()];
+        int i = 0;
+        for (double[] onset : slots.values()) {
+            centroids[i] = a.centroidHz[(int) onset[0]];
+            strengths[i++] = a.flux[(int) onset[0]];
+        }
+        float[] sortedCentroids = centroids.clone();
+        Arrays.sort(sortedCentroids);
+        float[] sortedStrengths = strengths.clone();
+        Arrays.sort(sortedStrengths);
+        float chordThreshold = sortedStrengths[(int) Math.min(sortedStrengths.length - 1, sortedStrengths.length * CHORD_PERCENTILE)];
+        boolean chords = difficulty.getLevel() >= 3;
+
+        List<Note> notes = new ArrayList<>(slots.size());
+        int prevLane = -1, repeats = 0;
+        i = 0;
+        for (double[] onset : slots.values()) {
+            double t = onset[1];
+            float c = centroids[i];
+            float s = strengths[i++];
+            if (t < LEAD_IN_SEC) continue;
+
+            int lane = 0;
+            while (lane < LANES - 1 && c > sortedCentroids[sortedCentroids.length * (lane + 1) / LANES]) lane++;
+
+            // No more than two in a row on the same pad
+            repeats = (lane == prevLane) ? repeats + 1 : 0;
+            if (repeats >= 2) {
+                lane = (lane + 1) % LANES;
+                repeats = 0;
+            }
+            prevLane = lane;
+
+            int mask = 1 << lane;
+            if (chords && s >= chordThreshold) mask |= 1 << ((lane + 2) % LANES);
+            notes.add(new Note(t, mask));
+        }
+        return notes;
+    }
+
+    // ===== Files =====
+
+    /**
+     * Analyse one song and write + compile its chart for one difficulty.
+     *
+     * @return the text chart, or null if a hand-written chart was kept
+     */
+    public static File generate(String songPath, DifficultyStrategy difficulty, boolean force) throws Exception {
+        List<File> written = generate(songPath, List.of(difficulty), force);
+        return written.isEmpty() ? null : written.get(0);
+    }
+
+    /**
+     * Analyse one song once and write + compile a chart for each difficulty
+     *
+     * @return the text charts written (hand-written ones are kept and not listed)
+     */
+    public static List<File> generate(String songPath, List<DifficultyStrategy> difficulties, boolean force) throws Exception {
+        List<File> written = new ArrayList<>();
+        File shared = ChartCompiler.textFileForSong(songPath);
+        if (shared.exists() && !force && !isGenerated(shared)) {
+            System.out.println("[BeatmapGenerator] Keeping hand-written " + shared);
+            return written;
+        }
+
+        long start = System.nanoTime();
+        Analysis analysis = null;
+        for (DifficultyStrategy difficulty : difficulties) {
+            File chartFile = ChartCompiler.textFileForSong(songPath, difficulty.getLevel());
+            if (chartFile.exists() && !force && !isGenerated(chartFile)) {
+                System.out.println("[BeatmapGenerator] Keeping hand-written " + chartFile);
+                continue;
+            }
+            if (analysis == null) {
+                analysis = analyze(DecodedAudio.load(songPath));
+            }
+            List<Note> notes = chart(analysis, difficulty);
+
+            try (PrintWriter out = new PrintWriter(chartFile)) {
+                out.println(GENERATED_MARKER + " from " + new File(songPath).getName() + " - edit and remove this line to keep changes");
+                out.printf(Locale.ROOT, "# tempo %.2f bpm, %s%n", analysis.bpm, difficulty.getDescription());
+                for (Note n : notes) {
+                    out.printf(Locale.ROOT, "%.4f %s%n", n.timeSec, lanesOf(n.laneMask));
+                }
+            }
+            ChartCompiler.compileIfStale(chartFile);
+            written.add(chartFile);
+
+            System.out.printf("[BeatmapGenerator] %s (%s): %.1f bpm, %d onsets -> %d notes%n",
+                    songPath, difficulty.getDescription(), analysis.bpm, analysis.onsetFrames.length, notes.size());
+        }
+        System.out.printf("[BeatmapGenerator] %s: %d charts (%.2f s)%n",
+                songPath, written.size(), (System.nanoTime() - start) / 1e9);
+        return written;
+    }
+
+    private static boolean isGenerated(File chartFile) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(chartFile))) {
+            String first = in.readLine();
+            return first != null && first.startsWith(GENERATED_MARKER);
+        }
+    }
+
+    private static String lanesOf(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int lane = 0; lane < ChordPacket.MAX_LANES; lane++) {
+            if ((mask & (1 << lane)) == 0) continue;
+            if (sb.length() > 0) sb.append('+');
+            sb.append(lane);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Chart all songs in parallel (one fork/join task per song)
+     *
+     * @return number of songs that failed
+     */
+    public static int generateAll(String[] songs, List<DifficultyStrategy> difficulties, boolean force) {
+        int[] failed = new int[1];
+
+        class SongRange extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int from, to;
+
+            SongRange(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new SongRange(from, mid), new SongRange(mid, to));
+                    return;
+                }
+                try {
+                    generate(songs[from], difficulties, force);
+                } catch (Exception e) {
+                    System.err.println("[BeatmapGenerator] " + songs[from] + ": " + e.getMessage());
+                    synchronized (failed) {
+                        failed[0]++;
+                    }
+                }
+            }
+        }
+
+        if (songs.length > 0) {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(songs.length, Runtime.getRuntime().availableProcessors()));
+            try {
+                pool.invoke(new SongRange(0, songs.length));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return failed[0];
+    }
+
+    /**
+     * Usage: BeatmapGenerator [--difficulty 1|2|3] [--force] [song.wav ...]
+     * Charts every difficulty unless one is given. With no songs, charts every .wav in music/.
+     */
+    public static void main(String[] args) {
+        int level = 0; // 0 = all
+        boolean force = false;
+        List<String> songs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--difficulty") && i + 1 < args.length) {
+                level = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--force")) {
+                force = true;
+            } else {
+                songs.add(args[i]);
+            }
+        }
+        if (songs.isEmpty()) {
+            File[] wavs = new File("music").listFiles((d, name) -> name.toLowerCase().endsWith(".wav"));
+            if (wavs != null) {
+                for (File f : wavs) songs.add(f.getPath());
+            }
+        }
+
+        long start = System.nanoTime();
+        List<DifficultyStrategy> difficulties = new ArrayList<>();
+        if (level != 0) {
+            difficulties.add(DifficultyFactory.getDifficulty(level));
+        } else {
+            for (int l = DifficultyFactory.MIN_LEVEL; l <= DifficultyFactory.MAX_LEVEL; l++) {
+                difficulties.add(DifficultyFactory.getDifficulty(l));
+            }
+        }
+        int failed = generateAll(songs.toArray(new String[0]), difficulties, force);
+        System.out.printf("[BeatmapGenerator] %d songs in %.2f s, %d failed%n",
+                songs.size(), (System.nanoTime() - start) / 1e9, failed);
+        if (failed > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChartCompiler - Turns a text chart (.chart) into the binary form (.chartc)
+ * that CompiledChart memory-maps at level load.
+ *
+ * Text format, one beat per line ('#' starts a comment):
+ *
+ *   bpm 120          # optional, lets times be written in beats ("b8" = beat 8)
+ *   offset 0.05      # optional, seconds added to every time
+ *   1.25   0         # time in seconds, lane
+ *   b8     0+2       # chord: lanes joined with '+' (or ',')
+ *   -      3         # untimed beat, paced by the judge (a chart is all timed or all untimed)
+ *
+ * Lanes are 0-15. Beats are sorted by time and beats on the same time are merged
+ * into one chord. Charts live next to their song: music/KOTON.wav -> music/KOTON.chart.
+ * A chart for one difficulty level (music/KOTON.2.chart) is used instead at that level.
+ */
+public class ChartCompiler {
+
+    public static final String TEXT_EXTENSION = ".chart";
+    public static final String COMPILED_EXTENSION = ".chartc";
+
+    /**
+     * Compile a text chart into the binary file (written to a temp file, then moved into place)
+     *
+     * @return number of beats written
+     */
+    public static int compile(File textChart, File compiledChart) throws IOException {
+        List<long[]> beats = parse(textChart);
+
+        File tmp = new File(compiledChart.getPath() + ".tmp");
+        boolean timed = !beats.isEmpty() && beats.get(0)[0] >= 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(CompiledChart.MAGIC);
+            out.writeShort(CompiledChart.VERSION);
+            out.writeShort(timed ? CompiledChart.FLAG_TIMED : 0);
+            out.writeInt(beats.size());
+            out.writeInt(0); // reserved, keeps the time column 8-byte aligned
+            for (long[] b : beats) out.writeLong(b[0]);
+            for (long[] b : beats) out.writeShort((int) b[1]);
+        }
+        Files.move(tmp.toPath(), compiledChart.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.println("[ChartCompiler] " + textChart + " -> " + compiledChart + " (" + beats.size() + " beats)");
+        return beats.size();
+    }
+
+    /**
+     * Recompile if the binary is missing or older than the text chart.
+     *
+     * @return the compiled file, or null if neither form exists
+     */
+    public static File compileIfStale(File textChart) throws IOException {
+        File compiled = compiledFileFor(textChart);
+        if (!textChart.exists()) {
+            return compiled.exists() ? compiled : null;
+        }
+        if (!compiled.exists() || compiled.lastModified() < textChart.lastModified()) {
+            compile(textChart, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Text chart that belongs to a song file (same name, .chart extension)
+     */
+    public static File textFileForSong(String songPath) {
+        String base = songPath;
+        int dot = base.lastIndexOf('.');
+        int slash = Math.max(base.lastIndexOf('/'), base.lastIndexOf(File.separatorChar));
+        if (dot > slash) base = base.substring(0, dot);
+        return new File(base + TEXT_EXTENSION);
+    }
+
+    /**
+     * Text chart for a song at one difficulty level (music/KOTON.wav, 2 -> music/KOTON.2.chart)
+     */
+    public static File textFileForSong(String songPath, int level) {
+        String shared = textFileForSong(songPath).getPath();
+        String base = shared.substring(0, shared.length() - TEXT_EXTENSION.length());
+        return new File(base + "." + level + TEXT_EXTENSION);
+    }
+
+    private static File compiledFileFor(File textChart) {
+        String path = textChart.getPath();
+        if (path.endsWith(TEXT_EXTENSION)) {
+            path = path.substring(0, path.length() - TEXT_EXTENSION.length());
+        }
+        return new File(path + COMPILED_EXTENSION);
+    }
+
+    /**
+     * Parse a text chart into sorted {timeMicros, laneMask} pairs (timeMicros = -1 when untimed)
+     */
+    static List<long[]> parse(File textChart) throws IOException {
+        List<long[]> beats = new ArrayList<>();
+        double bpm = 0;
+        double offsetSec = 0;
+        Boolean timed = null;
+
+        try (BufferedReader in = new BufferedReader(new FileReader(textChart))) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int hash = line.indexOf('#');
+                if (hash >= 0) line = line.substring(0, hash);
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2) {
+                    throw chartError(textChart, lineNo, "expected '<time> <lanes>', got '" + line + "'");
+                }
+                try {
+                    if (parts[0].equalsIgnoreCase("bpm")) {
+                        bpm = Double.parseDouble(parts[1]);
+                        continue;
+                    }
+                    if (parts[0].equalsIgnoreCase("offset")) {
+                        offsetSec = Double.parseDouble(parts[1]);
+                        continue;
+                    }
+
+                    long timeMicros;
+                    if (parts[0].equals("-")) {
+                        timeMicros = -1;
+                    } else if (parts[0].startsWith("b") || parts[0].startsWith("B")) {
+                        if (bpm <= 0) throw chartError(textChart, lineNo, "beat time used before 'bpm'");
+                        double beat = Double.parseDouble(parts[0].substring(1));
+                        timeMicros = Math.round((beat * 60.0 / bpm + offsetSec) * 1e6);
+                    } else {
+                        timeMicros = Math.round((Double.parseDouble(parts[0]) + offsetSec) * 1e6);
+                    }
+
+                    boolean isTimed = timeMicros >= 0;
+                    if (timed == null) timed = isTimed;
+                    if (timed != isTimed) {
+                        throw chartError(textChart, lineNo, "cannot mix timed and untimed beats");
+                    }
+                    int mask = parseLanes(parts[1]);
+                    if (mask == 0) throw chartError(textChart, lineNo, "no lanes in '" + line + "'");
+                    beats.add(new long[] { timeMicros, mask });
+                } catch (NumberFormatException e) {
+                    throw chartError(textChart, lineNo, "bad number in '" + line + "'");
+                }
+            }
+        }
+
+        if (timed == null || !timed) return beats;
+
+        // Stable sort keeps authoring order for equal times, then merge them into chords
+        beats.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>(beats.size());
+        for (long[] b : beats) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last[0] == b[0]) {
+                last[1] |= b[1];
+            } else {
+                merged.add(b);
+            }
+        }
+        return merged;
+    }
+
+    private static int parseLanes(String lanes) {
+        int mask = 0;
+        for (String lane : lanes.split("[+,]")) {
+            int index = Integer.parseInt(lane);
+            if (index < 0 || index >= ChordPacket.MAX_LANES) {
+                throw new NumberFormatException("lane out of range: " + index);
+            }
+            mask |= 1 << index;
+        }
+        return mask;
+    }
+
+    private static IOException chartError(File file, int lineNo, String message) {
+        return new IOException(file + ":" + lineNo + ": " + message);
+    }
+
+    /**
+     * Compile every .chart under the given directories (default: music)
+     */
+    public static void main(String[] args) {
+        String[] dirs = (args.length > 0) ? args : new String[] { "music" };
+        int failed = 0;
+        for (String dir : dirs) {
+            File[] charts = new File(dir).listFiles((d, name) -> name.endsWith(TEXT_EXTENSION));
+            if (charts == null) {
+                System.err.println("[ChartCompiler] Not a directory: " + dir);
+                continue;
+            }
+            for (File chart : charts) {
+                try {
+                    compile(chart, compiledFileFor(chart));
+                } catch (IOException e) {
+                    System.err.println("[ChartCompiler] " + e.getMessage());
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) System.exit(1);
+    }
+}
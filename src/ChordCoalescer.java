@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChordCoalescer - Sits between GameplaySubject and BeatJudge and merges pad hits
+ * that land within a short window into a single ChordPacket.
+ *
+ * Pads are scanned one after the other, and keyboard keys are never pressed at
+ * exactly the same time, so a two-hand chord arrives as several hits a few ms
+ * apart. The first hit opens the window; when it closes, one ChordPacket with
+ * the combined lane mask (and the first hit's time) is forwarded, so the judge
+ * sees the whole chord at once. Non-AR2 packets pass straight through.
+ */
+public class ChordCoalescer implements Subject, Observer {
+
+    public static final long DEFAULT_WINDOW_MS = 25;
+
+    private final List<Observer> observers = new ArrayList<>();
+    private final long windowMs;
+    private final GameClock clock;
+    private final ScheduledExecutorService flusher;
+
+    // Chord being collected (guarded by lock)
+    private final Object lock = new Object();
+    private int pendingMask = 0;
+    private long firstHitMs = -1;
+
+    public ChordCoalescer(Subject sourceSubject) {
+        this(sourceSubject, DEFAULT_WINDOW_MS, GameClock.SYSTEM);
+    }
+
+    public ChordCoalescer(Subject sourceSubject, long windowMs, GameClock clock) {
+        if (sourceSubject == null) {
+            throw new IllegalArgumentException("Source Subject cannot be null");
+        }
+        this.windowMs = windowMs;
+        this.clock = (clock != null) ? clock : GameClock.SYSTEM;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ChordCoalescerThread");
+            t.setDaemon(true);
+            return t;
+        });
+        sourceSubject.registerObserver(this);
+    }
+
+    @Override
+    public void registerObserver(Observer o) {
+        synchronized (observers) {
+            if (!observers.contains(o)) {
+                observers.add(o);
+                System.out.println("[ChordCoalescer] Registered observer: " + o.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Override
+    public void removeObsever(Observer o) {
+        synchronized (observers) {
+            observers.remove(o);
+        }
+    }
+
+    @Override
+    public void notifyObservers(ArduinoPacket pkt) {
+        List<Observer> copy;
+        synchronized (observers) {
+            copy = new ArrayList<>(observers);
+        }
+        for (Observer o : copy) {
+            o.update(pkt);
+        }
+    }
+
+    /**
+     * Observer implementation - collects AR2 hits into the open chord window
+     */
+    @Override
+    public void update(ArduinoPacket pkt) {
+        if (pkt.getArduinoID() != 2) {
+            notifyObservers(pkt);
+            return;
+        }
+
+        int mask = pkt.getLaneMask();
+        if (windowMs <= 0) {
+            notifyObservers(new ChordPacket(mask, clock.currentTimeMillis()));
+            return;
+        }
+
+        synchronized (lock) {
+            if (pendingMask == 0) {
+                firstHitMs = clock.currentTimeMillis();
+                flusher.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+            pendingMask |= mask;
+        }
+    }
+
+    private void flush() {
+        int mask;
+        long hitAt;
+        synchronized (lock) {
+            mask = pendingMask;
+            hitAt = firstHitMs;
+            pendingMask = 0;
+            firstHitMs = -1;
+        }
+        if (mask == 0) return;
+
+        if (ChordPacket.isChord(mask)) {
+            System.out.println("[ChordCoalescer] Chord mask=0x" + Integer.toHexString(mask));
+        }
+        notifyObservers(new ChordPacket(mask, hitAt));
+    }
+}
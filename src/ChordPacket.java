@@ -0,0 +1,65 @@
+/**
+ * ChordPacket - AR2 packet carrying several pads hit at once as a 16-bit lane mask.
+ *
+ * Wire format (AR2): a header byte with payload CHORD_MARKER (0x3F), followed by
+ * the lane mask as two bytes, low byte first. Single hits keep the 1-byte format
+ * with the lane index (0..15) as payload.
+ */
+public class ChordPacket extends ArduinoPacket {
+
+	public static final int MAX_LANES = 16;
+	public static final int CHORD_MARKER = 0x3F;
+	public static final int ALL_LANES = (1 << MAX_LANES) - 1;
+
+	private final int laneMask;
+	private final long firstHitMs; // when the first pad of the chord was hit, or -1 if unknown
+
+	public ChordPacket(int laneMask) {
+		this(laneMask, -1);
+	}
+
+	public ChordPacket(int laneMask, long firstHitMs) {
+		super((byte) ((2 << 6) | CHORD_MARKER));
+		this.laneMask = laneMask & ALL_LANES;
+		this.firstHitMs = firstHitMs;
+	}
+
+	/**
+	 * Build from the two mask bytes that follow a chord header on the serial line
+	 */
+	public static ChordPacket fromWire(byte low, byte high) {
+		return new ChordPacket((low & 0xFF) | ((high & 0xFF) << 8));
+	}
+
+	/**
+	 * True if this header byte announces a chord (two mask bytes follow)
+	 */
+	public static boolean isChordHeader(byte control) {
+		return ((control >> 6) & 0x03) == 2 && (control & 0x3F) == CHORD_MARKER;
+	}
+
+	@Override
+	int getLaneMask() {
+		return laneMask;
+	}
+
+	long getFirstHitMs() {
+		return firstHitMs;
+	}
+
+	/**
+	 * Lowest lane in a mask (0..15), or -1 for an empty mask
+	 */
+	public static int lowestLane(int laneMask) {
+		return laneMask == 0 ? -1 : Integer.numberOfTrailingZeros(laneMask);
+	}
+
+	public static boolean isChord(int laneMask) {
+		return Integer.bitCount(laneMask) > 1;
+	}
+
+	@Override
+	public String toString() {
+		return "ChordPacket{mask=0x" + Integer.toHexString(laneMask) + "}";
+	}
+}
@@ -0,0 +1,169 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CompiledChart - Read-only view of a binary chart (.chartc) mapped straight from disk.
+ *
+ * Layout (big-endian), struct-of-arrays so each column is one contiguous run:
+ *
+ *   0   int    magic 'BTSC'
+ *   4   short  version
+ *   6   short  flags (1 = timed)
+ *   8   int    beat count n
+ *   12  int    reserved
+ *   16  long[n]  song time in microseconds (-1 if untimed)
+ *   ..  short[n] lane mask (16 lanes, so chords fit)
+ *
+ * Loading only checks the header and slices the two columns, so it costs the same
+ * for 10 or 100000 beats, and the data lives in the page cache rather than the heap.
+ * BeatJudge plays the chart through it as a BeatSequence: each beat is read from the
+ * mapped columns when the judge reaches it.
+ */
+public final class CompiledChart implements BeatJudge.BeatSequence {
+
+    static final int MAGIC = 0x42545343; // "BTSC"
+    static final int VERSION = 1;
+    static final int FLAG_TIMED = 1;
+    private static final int HEADER_BYTES = 16;
+
+    // Charts already mapped, by compiled file path (remapped when the file changes)
+    private static final Map<String, CompiledChart> LOADED = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final long lastModified;
+    private final boolean timed;
+    private final int count;
+    private final LongBuffer timesMicros;
+    private final ShortBuffer laneMasks;
+
+    private CompiledChart(File file, long lastModified, boolean timed, int count,
+                          LongBuffer timesMicros, ShortBuffer laneMasks) {
+        this.file = file;
+        this.lastModified = lastModified;
+        this.timed = timed;
+        this.count = count;
+        this.timesMicros = timesMicros;
+        this.laneMasks = laneMasks;
+    }
+
+    /**
+     * Map a compiled chart file
+     */
+    public static CompiledChart map(File file) throws IOException {
+        long lastModified = file.lastModified();
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // stays valid after close
+        }
+
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException(file + ": not a compiled chart");
+        }
+        int version = buf.getShort(4);
+        if (version != VERSION) {
+            throw new IOException(file + ": unsupported chart version " + version);
+        }
+        boolean timed = (buf.getShort(6) & FLAG_TIMED) != 0;
+        int count = buf.getInt(8);
+        long expected = HEADER_BYTES + (long) count * (Long.BYTES + Short.BYTES);
+        if (count < 0 || buf.capacity() != expected) {
+            throw new IOException(file + ": truncated chart (" + buf.capacity() + " bytes, expected " + expected + ")");
+        }
+
+        int masksAt = HEADER_BYTES + count * Long.BYTES;
+        LongBuffer times = slice(buf, HEADER_BYTES, masksAt).asLongBuffer();
+        ShortBuffer masks = slice(buf, masksAt, buf.capacity()).asShortBuffer();
+        // Beat.chord rejects an empty mask, so catch it here rather than mid-level on the judge thread
+        for (int i = 0; i < count; i++) {
+            if (masks.get(i) == 0) throw new IOException(file + ": beat " + i + " has no lanes");
+        }
+        return new CompiledChart(file, lastModified, timed, count, times, masks);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int from, int to) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(from).limit(to);
+        return dup.slice();
+    }
+
+    /**
+     * Chart for a song file (music/KOTON.wav -> music/KOTON.chart), compiling the text
+     * chart first if it changed. Returns null if the song has no chart.
+     */
+    public static CompiledChart forSong(String songPath) {
+        if (songPath == null) return null;
+        return load(songPath, ChartCompiler.textFileForSong(songPath));
+    }
+
+    /**
+     * Chart for a song at a difficulty level (music/KOTON.2.chart), or the song's
+     * shared chart if it has none for that level
+     */
+    public static CompiledChart forSong(String songPath, int level) {
+        if (songPath == null) return null;
+        CompiledChart chart = load(songPath, ChartCompiler.textFileForSong(songPath, level));
+        return chart != null ? chart : forSong(songPath);
+    }
+
+    private static CompiledChart load(String songPath, File textChart) {
+        try {
+            File compiled = ChartCompiler.compileIfStale(textChart);
+            if (compiled == null) return null;
+
+            String key = compiled.getAbsolutePath();
+            CompiledChart chart = LOADED.get(key);
+            if (chart == null || chart.lastModified != compiled.lastModified()) {
+                chart = map(compiled);
+                LOADED.put(key, chart);
+                System.out.println("[CompiledChart] Mapped " + compiled + " (" + chart.count + " beats)");
+            }
+            return chart;
+        } catch (IOException e) {
+            System.err.println("[CompiledChart] Could not load chart for " + songPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    public long getTimeMicros(int i) {
+        return timesMicros.get(i);
+    }
+
+    public double getTimeSec(int i) {
+        long t = timesMicros.get(i);
+        return (t < 0) ? -1 : t / 1e6;
+    }
+
+    public int getLaneMask(int i) {
+        return laneMasks.get(i) & 0xFFFF;
+    }
+
+    /**
+     * Judge beat i, built from the mapped columns when the judge reaches it
+     */
+    @Override
+    public BeatJudge.Beat get(int i) {
+        return BeatJudge.Beat.chord(getLaneMask(i), getTimeSec(i));
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledChart{" + file + ", beats=" + count + (timed ? ", timed" : "") + "}";
+    }
+}
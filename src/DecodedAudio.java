@@ -0,0 +1,150 @@
+import javax.sound.sampled.*;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * DecodedAudio - A whole song decoded to interleaved 16-bit PCM in memory.
+ * Shared by the player and the offline tools (beatmap generation) so they all
+ * see exactly the same samples. The samples live either in a heap short[] or,
+ * for DecodedAudioCache's off-heap mode, in a direct buffer the GC never scans.
+ */
+public class DecodedAudio implements PcmSource {
+
+    private final AudioFormat format;
+    private final ShortBuffer samples; // interleaved, channels per frame; only absolute gets are used
+
+    public DecodedAudio(AudioFormat format, short[] samples) {
+        this(format, ShortBuffer.wrap(samples));
+    }
+
+    private DecodedAudio(AudioFormat format, ShortBuffer samples) {
+        this.format = format;
+        this.samples = samples;
+    }
+
+    /**
+     * Decode a file, converting anything that is not 16-bit signed little-endian PCM
+     */
+    public static DecodedAudio load(String filePath) throws Exception {
+        return load(filePath, false);
+    }
+
+    /**
+     * Decode a file into heap memory, or into a direct (off-heap) buffer
+     */
+    public static DecodedAudio load(String filePath, boolean offHeap) throws Exception {
+        System.out.println("[Load] Loading: " + filePath);
+
+        AudioInputStream ais = openPcmStream(filePath);
+        AudioFormat format = ais.getFormat();
+
+        // Read all audio data
+        byte[] audioBytes = ais.readAllBytes();
+        ais.close();
+
+        ShortBuffer samples;
+        if (offHeap) {
+            // The bytes are already little-endian PCM, so they are copied as they are
+            ByteBuffer direct = ByteBuffer.allocateDirect(audioBytes.length & ~1).order(ByteOrder.LITTLE_ENDIAN);
+            direct.put(audioBytes, 0, direct.capacity()).flip();
+            samples = direct.asShortBuffer();
+        } else {
+            short[] heap = new short[audioBytes.length / 2];
+            ByteBuffer.wrap(audioBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(heap);
+            samples = ShortBuffer.wrap(heap);
+        }
+
+        System.out.println("[Load] Loaded " + samples.capacity() + " samples" + (offHeap ? " (off-heap)" : ""));
+        return new DecodedAudio(format, samples);
+    }
+
+    /**
+     * Open a file as a stream of 16-bit signed little-endian PCM, converting if needed
+     */
+    static AudioInputStream openPcmStream(String filePath) throws Exception {
+        AudioInputStream ais = AudioSystem.getAudioInputStream(new File(filePath));
+        AudioFormat format = ais.getFormat();
+
+        System.out.println("[Load] Format: " + format);
+
+        if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                || format.getSampleSizeInBits() != 16 || format.isBigEndian()) {
+            AudioFormat pcmFormat = new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                format.getSampleRate(), 16, format.getChannels(),
+                format.getChannels() * 2, format.getSampleRate(), false
+            );
+            ais = AudioSystem.getAudioInputStream(pcmFormat, ais);
+        }
+        return ais;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Memory held by the samples, in bytes
+     */
+    public long getByteSize() {
+        return (long) samples.capacity() * 2;
+    }
+
+    public boolean isOffHeap() {
+        return samples.isDirect();
+    }
+
+    @Override
+    public int getChannels() {
+        return Math.max(1, format.getChannels());
+    }
+
+    @Override
+    public long getFrameLength() {
+        return getFrameCount();
+    }
+
+    @Override
+    public int read(long frame, short[] dst, int offset, int frames) {
+        int channels = getChannels();
+        long available = getFrameCount() - frame;
+        if (frame < 0 || available <= 0) return 0;
+        int n = (int) Math.min(frames, available);
+        samples.get((int) frame * channels, dst, offset, n * channels);
+        return n;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the samples are just garbage collected
+    }
+
+    public float getSampleRate() {
+        return format.getSampleRate();
+    }
+
+    public int getFrameCount() {
+        return samples.capacity() / getChannels();
+    }
+
+    /**
+     * Channels averaged into one mono signal scaled to [-1, 1]
+     */
+    public float[] toMono() {
+        int channels = getChannels();
+        int frames = getFrameCount();
+        float[] mono = new float[frames];
+        float scale = 1f / (32768f * channels);
+        for (int f = 0; f < frames; f++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += samples.get(f * channels + c);
+            }
+            mono[f] = sum * scale;
+        }
+        return mono;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DecodedAudioCache - Keeps recently played songs decoded, up to a byte budget.
+ *
+ * Entries are keyed by path plus the file's modification time and size, so an
+ * edited file is decoded again rather than served stale. When the budget is
+ * exceeded the least recently used songs are dropped. Songs can optionally be held
+ * in direct buffers (off-heap) so large caches do not add to GC scanning.
+ * A song that is evicted while it is still playing stays alive until the player
+ * lets go of it.
+ */
+public class DecodedAudioCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 192L * 1024 * 1024; // ~6 stereo 3-minute songs
+
+    private final long budgetBytes;
+    private final boolean offHeap;
+
+    // Access-ordered: iteration starts at the least recently used entry (guarded by this)
+    private final LinkedHashMap<String, DecodedAudio> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public DecodedAudioCache() {
+        this(DEFAULT_BUDGET_BYTES, false);
+    }
+
+    public DecodedAudioCache(long budgetBytes, boolean offHeap) {
+        this.budgetBytes = budgetBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Decoded song for a file, decoding it on a miss
+     */
+    public DecodedAudio get(String path) throws Exception {
+        String key = keyFor(path);
+        synchronized (this) {
+            DecodedAudio cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                System.out.println("[DecodedAudioCache] Hit " + path + " " + stats());
+                return cached;
+            }
+            misses++;
+        }
+
+        // Decode outside the lock; if two threads race on the same song the second copy just replaces the first
+        DecodedAudio audio = DecodedAudio.load(path, offHeap);
+        put(key, audio);
+        System.out.println("[DecodedAudioCache] Miss " + path + " " + stats());
+        return audio;
+    }
+
+    private synchronized void put(String key, DecodedAudio audio) {
+        long size = audio.getByteSize();
+        if (size > budgetBytes) return; // would evict everything and still not fit
+
+        DecodedAudio old = entries.put(key, audio);
+        if (old != null) usedBytes -= old.getByteSize();
+        usedBytes += size;
+
+        for (Iterator<Map.Entry<String, DecodedAudio>> it = entries.entrySet().iterator();
+                usedBytes > budgetBytes && it.hasNext(); ) {
+            Map.Entry<String, DecodedAudio> lru = it.next();
+            if (lru.getKey().equals(key)) continue;
+            usedBytes -= lru.getValue().getByteSize();
+            it.remove();
+            evictions++;
+            System.out.println("[DecodedAudioCache] Evicted " + lru.getKey());
+        }
+    }
+
+    private static String keyFor(String path) {
+        File f = new File(path);
+        return f.getAbsolutePath() + "@" + f.lastModified() + ":" + f.length();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public synchronized String stats() {
+        return String.format("(hits=%d misses=%d evictions=%d, %d/%d MB%s)", hits, misses, evictions,
+                usedBytes >> 20, budgetBytes >> 20, offHeap ? " off-heap" : "");
+    }
+}
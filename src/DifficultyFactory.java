@@ -1,4 +1,7 @@
 public class DifficultyFactory {
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 3;
+    
     private static final DifficultyStrategy EASY = new EasyDifficulty();
     private static final DifficultyStrategy MEDIUM = new MediumDifficulty();
     private static final DifficultyStrategy HARD = new HardDifficulty();
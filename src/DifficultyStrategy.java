@@ -11,6 +11,13 @@ public interface DifficultyStrategy {
      */
     double getBeatTempo();
     
+    /**
+     * Get the smallest gap between notes in a generated chart, in musical beats
+     * (2.0 = half notes, 0.5 = eighth notes)
+     * @return minimum note spacing in beats
+     */
+    double getChartNoteSpacing();
+    
     /**
      * Get a description of this difficulty level
      */
@@ -9,6 +9,11 @@ public class EasyDifficulty implements DifficultyStrategy {
         return 3; // 2 seconds inter-beat delay
     }
     
+    @Override
+    public double getChartNoteSpacing() {
+        return 2.0; // Half notes
+    }
+    
     @Override
     public String getDescription() {
         return "Easy (music_tempo=-2, beat_tempo=3.0s)";
@@ -2,6 +2,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * EmulatedDriver - Development/Testing driver that simulates hardware via keyboard.
@@ -16,6 +17,7 @@ import java.util.ArrayList;
  *   z -> AR3 Previous Level
  *   x -> AR3 Next Level
  *   c -> AR3 Pause/Stop Song
+ *   v -> Calibrate keyboard latency (tap I/J/K/L on each click)
  */
 public class EmulatedDriver {
     
@@ -81,14 +83,21 @@ public class EmulatedDriver {
     private EmulatedSubject gameplaySubject;
     private EmulatedSubject systemControlSubject;
     private GameOrchestrator orchestrator;
+    private volatile boolean calibrating = false;
     
     public static void main(String[] args) {
+        // --timeline: schedule beats from the song position (BeatControls timestamps)
+        boolean timeline = Arrays.asList(args).contains("--timeline");
+        // --stream: decode songs while they play instead of loading them whole
+        boolean stream = Arrays.asList(args).contains("--stream");
+        // --active-render: draw the HUD from its own render thread (frame stats logged)
+        boolean activeRender = Arrays.asList(args).contains("--active-render");
         SwingUtilities.invokeLater(() -> {
-            new EmulatedDriver().start();
+            new EmulatedDriver().start(timeline, stream, activeRender);
         });
     }
     
-    private void start() {
+    private void start(boolean timeline, boolean stream, boolean activeRender) {
         String[] playlist = {
             "music/KOTON.wav",
             "music/MCR_HOUSE_OF_WOLVES.wav",
@@ -108,6 +117,7 @@ public class EmulatedDriver {
         System.out.println("  z -> Previous Level (AR3)");
         System.out.println("  x -> Next Level (AR3)");
         System.out.println("  c -> Pause/Resume (AR3)");
+        System.out.println("  v -> Calibrate keyboard latency (tap a pad key on each click)");
         
         // Create emulated subjects (no Arduino handlers needed)
         tempoSubject = new EmulatedSubject(1);
@@ -116,6 +126,11 @@ public class EmulatedDriver {
         
         // Create orchestrator (prompts for name and difficulty)
         orchestrator = new GameOrchestrator(playlist);
+        orchestrator.setTimelineMode(timeline);
+        orchestrator.setStreamingAudio(stream);
+        if (activeRender) {
+            orchestrator.setActiveRendering(ActiveRenderCanvas.DEFAULT_FPS);
+        }
         
         // Wrap emulated subjects with the appropriate wrapper classes that filter by Arduino ID
         TempoSubject tempoWrapper = new TempoSubject(tempoSubject);
@@ -185,9 +200,36 @@ public class EmulatedDriver {
                 // AR3 Pause/Resume
                 simulateSystemControl(2);
                 break;
+            case KeyEvent.VK_V:
+                startCalibration();
+                break;
         }
     }
     
+    /**
+     * Measure keyboard latency on a background thread (the taps arrive on the EDT)
+     * and apply it to the running BeatJudge
+     */
+    private void startCalibration() {
+        if (calibrating) return;
+        calibrating = true;
+        Thread t = new Thread(() -> {
+            try {
+                double offset = new LatencyCalibrator(gameplaySubject, LatencyProfiles.KEYBOARD_DEVICE)
+                        .calibrate(16, 600);
+                if (orchestrator.getBeatJudge() != null) {
+                    orchestrator.getBeatJudge().setInputOffsetMs(offset);
+                }
+            } catch (Exception e) {
+                System.err.println("[EmulatedDriver] Calibration failed: " + e.getMessage());
+            } finally {
+                calibrating = false;
+            }
+        }, "CalibrationThread");
+        t.setDaemon(true);
+        t.start();
+    }
+    
     private void simulateGameplayHit(int padNumber) {
         // Pad number is 1-4, need to encode as Arduino2 packet
         // Format: ArduinoID (2) in upper 2 bits, payload (padNumber-1) in lower 6 bits
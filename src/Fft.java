@@ -0,0 +1,84 @@
+/**
+ * Fft - In-place radix-2 complex FFT of a fixed size.
+ * Twiddle factors and the bit-reversal table are built once, so repeated
+ * transforms (one per STFT frame) allocate nothing.
+ */
+public class Fft {
+
+    private final int size;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+        this.size = size;
+        this.cos = new double[size / 2];
+        this.sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / size);
+            sin[i] = -Math.sin(2 * Math.PI * i / size);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(size);
+        this.reversed = new int[size];
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Forward transform of (re, im) in place
+     */
+    public void forward(double[] re, double[] im) {
+        transform(re, im, false);
+    }
+
+    /**
+     * Inverse transform of (re, im) in place, scaled by 1/size
+     */
+    public void inverse(double[] re, double[] im) {
+        transform(re, im, true);
+        double scale = 1.0 / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        double sign = inverse ? -1.0 : 1.0;
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int step = size / len;
+            for (int start = 0; start < size; start += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sign * sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
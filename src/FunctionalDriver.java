@@ -21,6 +21,34 @@ public class FunctionalDriver {
         // Create orchestrator (prompts for name and difficulty)
         GameOrchestrator orchestrator = new GameOrchestrator(playlist);
         
+        // --stream: decode songs while they play (for low-memory kiosk machines)
+        orchestrator.setStreamingAudio(java.util.Arrays.asList(args).contains("--stream"));
+        // --stretch=wsola|phasevocoder|resample: how tempo changes are rendered
+        // --latency=low|balanced|default: audio output buffering
+        // --prerendered=DIR: play tempo variants baked by TempoVariantRenderer
+        // --device-rate=HZ: output device's native rate (songs are resampled to it here)
+        // --active-render[=FPS]: draw the HUD from its own render thread (frame stats logged)
+        for (String arg : args) {
+            if (arg.startsWith("--stretch=")) {
+                orchestrator.setStretchEngine(arg.substring("--stretch=".length()));
+            }
+            if (arg.startsWith("--latency=")) {
+                orchestrator.setLatencyMode(LatencyMode.forName(arg.substring("--latency=".length())));
+            }
+            if (arg.startsWith("--prerendered=")) {
+                orchestrator.setPrerenderedDir(arg.substring("--prerendered=".length()));
+            }
+            if (arg.startsWith("--device-rate=")) {
+                orchestrator.setDeviceSampleRate(Float.parseFloat(arg.substring("--device-rate=".length())));
+            }
+            if (arg.equals("--active-render")) {
+                orchestrator.setActiveRendering(ActiveRenderCanvas.DEFAULT_FPS);
+            }
+            if (arg.startsWith("--active-render=")) {
+                orchestrator.setActiveRendering(Integer.parseInt(arg.substring("--active-render=".length())));
+            }
+        }
+        
         // Arduino port paths - UPDATE THESE FOR YOUR SYSTEM
         String arduino1Port = "/dev/cu.usbserial-A700eDMk";  // AR1: Tempo
         String arduino2Port = "/dev/cu.usbserial-A10LIIP2";  // AR2: Beat hits
@@ -38,6 +66,15 @@ public class FunctionalDriver {
         
         System.out.println("[FunctionalDriver] Arduino handlers initialized");
         
+        // --calibrate: measure the pads' input latency before the game starts
+        if (java.util.Arrays.asList(args).contains("--calibrate")) {
+            try {
+                new LatencyCalibrator(ar2, ar2.getPath()).calibrate(16, 600);
+            } catch (Exception e) {
+                System.err.println("[FunctionalDriver] Calibration failed: " + e.getMessage());
+            }
+        }
+        
        
         
         // Initialize all components with real Arduino handlers
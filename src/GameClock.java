@@ -0,0 +1,63 @@
+/**
+ * GameClock - Time and thread scheduling used by BeatJudge.
+ * SYSTEM is the real clock (System.currentTimeMillis, Thread.sleep, Object.wait).
+ * VirtualClock replaces it in HeadlessSimulation so sessions run faster than real time.
+ */
+public interface GameClock {
+
+    /**
+     * Current time in milliseconds
+     */
+    long currentTimeMillis();
+
+    /**
+     * Block the calling thread for the given number of milliseconds
+     */
+    void sleep(long ms) throws InterruptedException;
+
+    /**
+     * Wait on a monitor the caller already holds, like monitor.wait(ms).
+     * May return early (notify or spurious wake-up), so callers must re-check their condition.
+     */
+    void waitOn(Object monitor, long ms) throws InterruptedException;
+
+    /**
+     * Start a worker loop. Returns the thread running it, or null if the clock
+     * runs the task itself (virtual time).
+     */
+    Thread start(Runnable task, String name);
+
+    /**
+     * Wake a worker blocked in sleep/waitOn, like Thread.interrupt()
+     */
+    void interrupt(Thread worker);
+
+    GameClock SYSTEM = new GameClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long ms) throws InterruptedException {
+            Thread.sleep(ms);
+        }
+
+        @Override
+        public void waitOn(Object monitor, long ms) throws InterruptedException {
+            monitor.wait(ms);
+        }
+
+        @Override
+        public Thread start(Runnable task, String name) {
+            Thread t = new Thread(task, name);
+            t.start();
+            return t;
+        }
+
+        @Override
+        public void interrupt(Thread worker) {
+            if (worker != null && worker.isAlive()) worker.interrupt();
+        }
+    };
+}
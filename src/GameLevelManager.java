@@ -1,13 +1,21 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * GameLevelManager - Observes SystemControlSubject to handle level changes and pause/resume logic.
  * Manages beatmap loading and notifies observers when beatmaps change.
+ *
+ * A level change is a staged transition - fade out, swap chart and song, count in,
+ * start - run on a transition thread together with pause/resume and sequence end,
+ * so the AR3 reader only queues requests and never waits on audio. A button press
+ * cancels the transition in flight: next/previous move on to the new target, pause
+ * holds the game where the transition got to. Observers see each stage.
  */
 public class GameLevelManager implements Observer {
     
-    // Beatmaps (5 total) - same as in BeatController
+    // Built-in beatmaps (5 total), used when a song has no .chart file next to it
     private static final BeatJudge.Beat[] BEATMAP_0 = new BeatJudge.Beat[] {
         new BeatJudge.Beat(0), new BeatJudge.Beat(1), new BeatJudge.Beat(2), new BeatJudge.Beat(3),
         new BeatJudge.Beat(0), new BeatJudge.Beat(2), new BeatJudge.Beat(1), new BeatJudge.Beat(3)
@@ -54,6 +62,24 @@ public class GameLevelManager implements Observer {
     
     private volatile int currentLevelIndex = 0;
     private volatile boolean isPaused = false;
+    private volatile int chartLevel;           // difficulty whose charts are loaded
+    
+    /**
+     * Stages of a level change, in order; CANCELLED if a newer button press took over
+     */
+    public enum TransitionStage { FADE_OUT, SWAP, COUNT_IN, START, DONE, CANCELLED }
+    
+    // Level changes (and pause/resume, sequence end) run one at a time on the transition executor
+    private static final long DEFAULT_FADE_OUT_MS = 300;
+    private static final int DEFAULT_COUNT_IN_BEATS = 3;
+    public static final long COUNT_IN_TICK_MS = 500; // a 3-2-1, not the 2-3 s chart interval
+    private volatile long fadeOutMs = DEFAULT_FADE_OUT_MS;
+    private volatile int countInBeats = DEFAULT_COUNT_IN_BEATS;
+    private final Object transitionLock = new Object();
+    private Executor transitionExecutor;  // created on first use (guarded by transitionLock)
+    private Transition inFlight;          // latest level change requested (guarded by transitionLock)
+    private int targetLevelIndex = 0;     // level the latest request leads to (guarded by transitionLock)
+    private int swapCount = 0;            // levels loaded so far, to spot stale sequence ends (guarded by transitionLock)
     
     // Observers for level changes
     private final List<LevelChangeObserver> levelObservers = new ArrayList<>();
@@ -65,6 +91,10 @@ public class GameLevelManager implements Observer {
         void onLevelChanged(int levelIndex, String levelName);
         void onPauseStateChanged(boolean isPaused);
         void onSequenceEnd();
+        
+        // Progress through a level change (0..1 within the stage); observers may ignore it
+        default void onTransitionProgress(int levelIndex, TransitionStage stage, double progress) {
+        }
     }
     
     /**
@@ -79,12 +109,45 @@ public class GameLevelManager implements Observer {
         this.systemControlSubject = systemControlSubject;
         this.beatJudge = beatJudge;
         this.musicController = musicController;
+        this.chartLevel = musicController.getDifficultyStrategy().getLevel();
         
         // Register this manager with the SystemControlSubject
         systemControlSubject.registerObserver(this);
         
-        // Load initial beatmap
-        loadBeatmap(currentLevelIndex);
+        // Load initial beatmap (at once: nothing is playing yet)
+        loadBeatmap(currentLevelIndex, false);
+    }
+    
+    /**
+     * Run level changes on this executor instead of the transition thread
+     * (HeadlessSimulation runs them inline, in virtual time)
+     */
+    public void setTransitionExecutor(Executor executor) {
+        synchronized (transitionLock) {
+            transitionExecutor = executor;
+        }
+    }
+    
+    /**
+     * Fade-out length and count-in ticks of a level change; 0 and 0 switch levels at once
+     */
+    public void setTransitionTiming(long fadeOutMs, int countInBeats) {
+        this.fadeOutMs = Math.max(0, fadeOutMs);
+        this.countInBeats = Math.max(0, countInBeats);
+    }
+    
+    /**
+     * Load the charts written for this difficulty from the next level on
+     */
+    public void setChartDifficulty(DifficultyStrategy difficulty) {
+        this.chartLevel = difficulty.getLevel();
+    }
+    
+    /**
+     * Count-in ticks (COUNT_IN_TICK_MS apart) before a new level starts
+     */
+    public int getCountInBeats() {
+        return countInBeats;
     }
     
     /**
@@ -125,24 +188,36 @@ public class GameLevelManager implements Observer {
     }
     
     /**
-     * Load a beatmap by index
+     * Load a beatmap by index and start its song (held at the top if holdSong, for a count-in)
      */
-    private synchronized void loadBeatmap(int index) {
+    private void loadBeatmap(int index, boolean holdSong) {
         if (index < 0 || index >= BEATMAP_BANK.length) {
             System.err.println("[GameLevelManager] Invalid beatmap index: " + index);
             return;
         }
         
         currentLevelIndex = index;
-        beatJudge.setBeatmap(BEATMAP_BANK[index], index);
+        synchronized (transitionLock) {
+            swapCount++;
+        }
         
-        // Restart music for the new level (in case it was paused after sequence end)
+        // A level change ends a pause (or the pause after sequence end): the new song
+        // is started from the top either way
         // Use the level index as the song index (they should be synchronized)
-        if (isPaused) {
-            isPaused = false;
-            musicController.togglePlayPause(); // Resume if paused
+        isPaused = false;
+        
+        if (beatJudge.isTimelineMode()) {
+            // Timed chart: start the song first so the judge reads the new song's clock,
+            // not the tail end of the previous one
+            musicController.startSong(index);
+            beatJudge.setBeatmap(getTimelineBeatmap(index), index);
+        } else {
+            beatJudge.setBeatmap(getSequenceBeatmap(index), index);
+            musicController.startSong(index);
+        }
+        if (holdSong) {
+            musicController.pause();
         }
-        musicController.startSong(index);
         
         String levelName = (index < LEVEL_NAMES.length) ? LEVEL_NAMES[index] : "Level " + (index + 1);
         
@@ -157,32 +232,82 @@ public class GameLevelManager implements Observer {
     }
     
     /**
-     * Go to next level
+     * Timed beatmap for a level: the song's chart file (for the current difficulty if
+     * there is one) if it is timed, else the BeatControls rhythm sheet, else the untimed bank map.
+     */
+    private BeatJudge.BeatSequence getTimelineBeatmap(int index) {
+        CompiledChart chart = CompiledChart.forSong(musicController.getSongPath(index), chartLevel);
+        if (chart != null && chart.isTimed() && chart.size() > 0) {
+            return chart; // read in place, beat by beat
+        }
+        BeatJudge.Beat[] timed = BeatJudge.Beat.fromTimeline(new BeatControls(index).getBeats());
+        return BeatJudge.BeatSequence.of(timed.length > 0 ? timed : BEATMAP_BANK[index]);
+    }
+    
+    /**
+     * Beat sequence for a level outside timeline mode: the song's chart file (for the
+     * current difficulty if there is one; times are ignored), else the built-in bank map.
+     */
+    private BeatJudge.BeatSequence getSequenceBeatmap(int index) {
+        CompiledChart chart = CompiledChart.forSong(musicController.getSongPath(index), chartLevel);
+        if (chart != null && chart.size() > 0) {
+            return chart; // read in place, beat by beat
+        }
+        return BeatJudge.BeatSequence.of(BEATMAP_BANK[index]);
+    }
+    
+    /**
+     * Go to next level (after the one a change in flight is heading to)
      */
-    public synchronized void nextLevel() {
-        int nextIndex = (currentLevelIndex + 1) % BEATMAP_BANK.length;
-        loadBeatmap(nextIndex);
+    public void nextLevel() {
+        requestLevel(1);
     }
     
     /**
      * Go to previous level
      */
-    public synchronized void previousLevel() {
-        int prevIndex = (currentLevelIndex - 1 + BEATMAP_BANK.length) % BEATMAP_BANK.length;
-        loadBeatmap(prevIndex);
+    public void previousLevel() {
+        requestLevel(-1);
     }
     
     /**
-     * Toggle pause/resume
+     * Queue a level change, cancelling the one in flight
      */
-    public synchronized void togglePauseResume() {
+    private void requestLevel(int step) {
+        synchronized (transitionLock) {
+            int index = Math.floorMod(targetLevelIndex + step, BEATMAP_BANK.length);
+            targetLevelIndex = index;
+            cancelInFlight();
+            inFlight = new Transition(index);
+            submit(inFlight);
+        }
+    }
+    
+    /**
+     * Toggle pause/resume (cancels a level change in flight, which stays where it got to)
+     */
+    public void togglePauseResume() {
+        synchronized (transitionLock) {
+            cancelInFlight();
+            submit(this::applyPauseToggle);
+        }
+    }
+    
+    private void applyPauseToggle() {
+        synchronized (transitionLock) {
+            if (inFlight == null) {
+                targetLevelIndex = currentLevelIndex; // a cancelled change may not have swapped yet
+            }
+        }
         isPaused = !isPaused;
-
-        musicController.togglePlayPause();
-
+        
+        // A cancelled change may have left the music faded or held for its count-in
+        musicController.fadeTo(1.0, 0);
         if (isPaused) {
+            musicController.pause();
             beatJudge.pauseBeats();
         } else {
+            musicController.resume();
             beatJudge.resumeBeats();
         }
 
@@ -201,11 +326,30 @@ public class GameLevelManager implements Observer {
      * This allows the music to be restarted when level changes
      */
     public void onSequenceEnd() {
+        synchronized (transitionLock) {
+            // The last beat can time out while a level change is fading the level out:
+            // that level is being left, so its end must not pause the next one
+            if (inFlight != null) {
+                System.out.println("[GameLevelManager] Sequence end during a level change - ignored");
+                return;
+            }
+            int level = swapCount;
+            submit(() -> applySequenceEnd(level));
+        }
+    }
+    
+    private void applySequenceEnd(int level) {
+        synchronized (transitionLock) {
+            if (level != swapCount || inFlight != null) {
+                System.out.println("[GameLevelManager] Sequence end of a previous level - ignored");
+                return;
+            }
+        }
         System.out.println("[GameLevelManager] Sequence ended - pausing music");
         // Pause instead of stop to allow restart when level changes
         if (!isPaused) {
             isPaused = true;
-            musicController.togglePlayPause();
+            musicController.pause();
             beatJudge.resumeBeats();   // ✅ resume beat scheduling too
 
         }
@@ -218,6 +362,139 @@ public class GameLevelManager implements Observer {
         }
     }
     
+    // ===== Level transitions =====
+    
+    /**
+     * One level change; runs on the transition executor and stops between stages once cancelled
+     */
+    private class Transition implements Runnable {
+        private final int index;
+        private boolean cancelled = false; // guarded by transitionLock
+        
+        Transition(int index) {
+            this.index = index;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                if (!stage()) return;
+            } catch (RuntimeException e) {
+                System.err.println("[GameLevelManager] Level change to #" + index + " failed: " + e);
+            }
+            synchronized (transitionLock) {
+                if (inFlight == this) inFlight = null;
+            }
+        }
+        
+        /**
+         * The stages; false if cancelled part way
+         */
+        private boolean stage() {
+            if (isCancelled()) return cancelledAt();
+            long fade = isPaused ? 0 : fadeOutMs; // nothing to fade while paused
+            int beats = countInBeats;
+            
+            // Fade out what is playing; no beats are judged until the new level starts
+            beatJudge.pauseBeats();
+            reportProgress(index, TransitionStage.FADE_OUT, 0.0);
+            if (fade > 0) {
+                musicController.fadeTo(0.0, fade);
+                if (!await(fade)) return cancelledAt();
+            }
+            reportProgress(index, TransitionStage.FADE_OUT, 1.0);
+            
+            // Swap chart and song (songs are prefetched, so this is mostly a hand-over)
+            if (isCancelled()) return cancelledAt();
+            loadBeatmap(index, beats > 0);
+            reportProgress(index, TransitionStage.SWAP, 1.0);
+            
+            // Count in, song held at the top
+            for (int b = 0; b < beats; b++) {
+                reportProgress(index, TransitionStage.COUNT_IN, (double) b / beats);
+                if (!await(COUNT_IN_TICK_MS)) return cancelledAt();
+            }
+            
+            // Start: music up, then the judge (so timeline mode reads the new song's clock)
+            if (isCancelled()) return cancelledAt();
+            musicController.resume();
+            musicController.fadeTo(1.0, 0);
+            beatJudge.resumeBeats();
+            reportProgress(index, TransitionStage.START, 1.0);
+            reportProgress(index, TransitionStage.DONE, 1.0);
+            return true;
+        }
+        
+        void cancel() {
+            cancelled = true;
+            transitionLock.notifyAll();
+        }
+        
+        private boolean isCancelled() {
+            synchronized (transitionLock) {
+                return cancelled;
+            }
+        }
+        
+        private boolean cancelledAt() {
+            System.out.println("[GameLevelManager] Change to level #" + index + " cancelled");
+            reportProgress(index, TransitionStage.CANCELLED, 1.0);
+            return false;
+        }
+        
+        /**
+         * Wait ms unless cancelled first; false if cancelled
+         */
+        private boolean await(long ms) {
+            long deadline = System.currentTimeMillis() + ms;
+            synchronized (transitionLock) {
+                while (!cancelled) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) return true;
+                    try {
+                        transitionLock.wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Cancel the level change in flight (caller holds transitionLock)
+     */
+    private void cancelInFlight() {
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+    }
+    
+    /**
+     * Queue work on the transition executor (caller holds transitionLock)
+     */
+    private void submit(Runnable work) {
+        if (transitionExecutor == null) {
+            transitionExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "LevelTransitionThread");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        transitionExecutor.execute(work);
+    }
+    
+    private void reportProgress(int index, TransitionStage stage, double progress) {
+        synchronized (levelObservers) {
+            for (LevelChangeObserver o : levelObservers) {
+                o.onTransitionProgress(index, stage, progress);
+            }
+        }
+    }
+    
     public int getCurrentLevelIndex() {
         return currentLevelIndex;
     }
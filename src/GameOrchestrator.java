@@ -11,6 +11,13 @@ public class GameOrchestrator {
     private final String playerName;
     private DifficultyStrategy difficultyStrategy;
     private final String[] playlist;
+    private boolean timelineMode = false;
+    private boolean streamingAudio = false;
+    private String stretchEngine = null; // null = player default (wsola)
+    private LatencyMode latencyMode = LatencyMode.DEFAULT;
+    private String prerenderedDir = null; // null = stretch live
+    private float deviceSampleRate = 0;   // 0 = negotiate with the mixer
+    private int activeRenderFps = 0;      // 0 = Swing repaints the HUD
     
     // Components
     private TempoSubject tempoSubject;
@@ -50,7 +57,7 @@ public class GameOrchestrator {
         systemControlSubject = null;
         
         // Create MusicPlayer
-        MusicPlayer player = new RealtimeTempoPlayer(playlist);
+        MusicPlayer player = createPlayer();
         
         // Create subjects will be done by EmulatedDriver
         // For now, we'll create a method that accepts subjects
@@ -72,13 +79,26 @@ public class GameOrchestrator {
         tempoSubject.setDifficultyObserver(level -> setDifficulty(level));
         
         // Create MusicPlayer
-        MusicPlayer player = new RealtimeTempoPlayer(playlist);
+        MusicPlayer player = createPlayer();
         
         // Create MusicController with difficulty strategy (no longer observes TempoSubject)
         musicController = new MusicController(player, playlist, null, difficultyStrategy);
         
         // Create BeatJudge with inter-beat delay from strategy
-        beatJudge = new BeatJudge(gameplaySubject, difficultyStrategy.getBeatTempo());
+        // (hits within a few ms of each other are merged into one chord first)
+        beatJudge = new BeatJudge(new ChordCoalescer(gameplaySubject), difficultyStrategy.getBeatTempo());
+        
+        // Timeline mode: beats follow the song position reported by the player
+        if (player instanceof SongClock) {
+            beatJudge.setSongClock((SongClock) player);
+        }
+        beatJudge.setTimelineMode(timelineMode);
+        
+        // Hit/miss sounds are mixed into the music's own output line
+        attachHitSounds(player);
+        
+        // Compensate the pads' calibrated latency (see LatencyCalibrator)
+        beatJudge.setInputOffsetMs(LatencyProfiles.getOffsetMs(ar2.getPath()));
         
         // Create GameLevelManager
         levelManager = new GameLevelManager(systemControlSubject, beatJudge, musicController);
@@ -88,7 +108,7 @@ public class GameOrchestrator {
         
         // Create GUI on EDT
         SwingUtilities.invokeLater(() -> {
-            gameUI = new BeatGameUI(beatJudge, levelManager);
+            gameUI = new BeatGameUI(beatJudge, levelManager, activeRenderFps);
         });
         
         // Start MusicController
@@ -112,13 +132,26 @@ public class GameOrchestrator {
         tempoSubject.setDifficultyObserver(level -> setDifficulty(level));
         
         // Create MusicPlayer
-        MusicPlayer player = new RealtimeTempoPlayer(playlist);
+        MusicPlayer player = createPlayer();
         
         // Create MusicController with difficulty strategy (no longer observes TempoSubject)
         musicController = new MusicController(player, playlist, null, difficultyStrategy);
         
         // Create BeatJudge with inter-beat delay from strategy
-        beatJudge = new BeatJudge(gameplaySubject, difficultyStrategy.getBeatTempo());
+        // (hits within a few ms of each other are merged into one chord first)
+        beatJudge = new BeatJudge(new ChordCoalescer(gameplaySubject), difficultyStrategy.getBeatTempo());
+        
+        // Timeline mode: beats follow the song position reported by the player
+        if (player instanceof SongClock) {
+            beatJudge.setSongClock((SongClock) player);
+        }
+        beatJudge.setTimelineMode(timelineMode);
+        
+        // Hit/miss sounds are mixed into the music's own output line
+        attachHitSounds(player);
+        
+        // Compensate the keyboard's calibrated latency (see LatencyCalibrator)
+        beatJudge.setInputOffsetMs(LatencyProfiles.getOffsetMs(LatencyProfiles.KEYBOARD_DEVICE));
         
         // Create GameLevelManager
         levelManager = new GameLevelManager(systemControlSubject, beatJudge, musicController);
@@ -128,7 +161,7 @@ public class GameOrchestrator {
         
         // Create GUI on EDT
         SwingUtilities.invokeLater(() -> {
-            gameUI = new BeatGameUI(beatJudge, levelManager);
+            gameUI = new BeatGameUI(beatJudge, levelManager, activeRenderFps);
             gameUI.onDifficultyChanged(difficultyStrategy); // FORCE SYNC
         });
         
@@ -180,6 +213,84 @@ public class GameOrchestrator {
         }
     }
     
+    /**
+     * Drive beats from the song position instead of fixed inter-beat delays.
+     * Must be called before one of the initialize methods.
+     */
+    public void setTimelineMode(boolean enabled) {
+        this.timelineMode = enabled;
+    }
+    
+    /**
+     * Decode songs while they play (bounded memory) instead of loading them whole.
+     * Must be called before one of the initialize methods.
+     */
+    public void setStreamingAudio(boolean enabled) {
+        this.streamingAudio = enabled;
+    }
+    
+    /**
+     * Time-stretch engine for the music ("wsola", "phasevocoder" or "resample").
+     * Must be called before one of the initialize methods.
+     */
+    public void setStretchEngine(String name) {
+        this.stretchEngine = name;
+    }
+    
+    /**
+     * Audio output buffering (LatencyMode.LOW for tight rhythm feedback).
+     * Must be called before one of the initialize methods.
+     */
+    public void setLatencyMode(LatencyMode mode) {
+        this.latencyMode = mode;
+    }
+    
+    /**
+     * Play tempo variants baked by TempoVariantRenderer from this directory (null = stretch live).
+     * Must be called before one of the initialize methods.
+     */
+    public void setPrerenderedDir(String dir) {
+        this.prerenderedDir = dir;
+    }
+    
+    /**
+     * Native rate of the output device (e.g. 48000), so songs are resampled by the
+     * player instead of the system mixer. Must be called before one of the initialize methods.
+     */
+    public void setDeviceSampleRate(float rate) {
+        this.deviceSampleRate = rate;
+    }
+    
+    /**
+     * Draw the HUD from a dedicated render thread (ActiveRenderCanvas) at up to fps
+     * frames per second, 0 for Swing's repaint. Must be called before one of the initialize methods.
+     */
+    public void setActiveRendering(int fps) {
+        this.activeRenderFps = Math.max(0, fps);
+    }
+    
+    private void attachHitSounds(MusicPlayer player) {
+        if (player instanceof RealtimeTempoPlayer) {
+            beatJudge.registerObserver(((RealtimeTempoPlayer) player).getSfxMixer());
+        }
+    }
+    
+    private MusicPlayer createPlayer() {
+        RealtimeTempoPlayer player = new RealtimeTempoPlayer(playlist);
+        player.setStreaming(streamingAudio);
+        player.setLatencyMode(latencyMode);
+        if (stretchEngine != null) {
+            player.setStretchEngine(TimeStretchEngine.create(stretchEngine));
+        }
+        if (prerenderedDir != null) {
+            player.setPrerenderedDir(new java.io.File(prerenderedDir));
+        }
+        if (deviceSampleRate > 0) {
+            player.setDeviceSampleRate(deviceSampleRate);
+        }
+        return player;
+    }
+    
     // Getters
     public String getPlayerName() {
         return playerName;
@@ -224,6 +335,11 @@ public class GameOrchestrator {
             musicController.setTempo(difficultyStrategy.getMusicTempo());
         }
         
+        // Charts for the new difficulty from the next level on
+        if (levelManager != null) {
+            levelManager.setChartDifficulty(difficultyStrategy);
+        }
+        
         // Notify UI if available
         if (gameUI != null) {
             gameUI.onDifficultyChanged(difficultyStrategy);
@@ -9,6 +9,11 @@ public class HardDifficulty implements DifficultyStrategy {
         return 2; // 1 second inter-beat delay (hardest)
     }
     
+    @Override
+    public double getChartNoteSpacing() {
+        return 0.5; // Eighth notes
+    }
+    
     @Override
     public String getDescription() {
         return "Hard (music_tempo=3, beat_tempo=0.5s)";
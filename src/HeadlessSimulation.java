@@ -0,0 +1,344 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * HeadlessSimulation - Runs full game sessions (BeatJudge + GameLevelManager + scoring)
+ * on a VirtualClock with a simulated player, no GUI, audio or Arduino.
+ *
+ * Each session plays a number of levels: the player model reacts to every beat
+ * activation with a scheduled pad hit, and AR3 "next level" presses are simulated
+ * between sequences. Judgments, reaction latency and scheduling error are collected
+ * so timing regressions show up in numbers instead of in front of players.
+ *
+ * Usage: java HeadlessSimulation [sessions] [threads] [difficulty 1-3] [levels] [seed]
+ */
+public class HeadlessSimulation {
+
+    private static final String[] SONGS = { "sim0", "sim1", "sim2", "sim3", "sim4", "sim5" };
+    private static final long INTERMISSION_MS = 1500;       // time between sequences (AR3 press)
+    private static final long SESSION_LIMIT_MS = 60 * 60 * 1000; // virtual hour = hung session
+
+    // ===== Player models =====
+
+    /**
+     * A simulated player. Called on each beat activation; returns the hit to
+     * perform, or null to let the beat time out.
+     */
+    public interface PlayerModel {
+        Hit react(int beatNumber, int laneIndex);
+    }
+
+    /** A planned pad hit: delay after activation and the lane pressed. */
+    public static final class Hit {
+        public final long delayMs;
+        public final int laneIndex;
+
+        public Hit(long delayMs, int laneIndex) {
+            this.delayMs = delayMs;
+            this.laneIndex = laneIndex;
+        }
+    }
+
+    /**
+     * Randomized player: Gaussian reaction time, occasional misses and wrong lanes
+     */
+    public static class RandomPlayer implements PlayerModel {
+        private final Random random;
+        private final double meanMs;
+        private final double sdMs;
+        private final double missRate;
+        private final double wrongLaneRate;
+
+        public RandomPlayer(long seed, double meanMs, double sdMs, double missRate, double wrongLaneRate) {
+            this.random = new Random(seed);
+            this.meanMs = meanMs;
+            this.sdMs = sdMs;
+            this.missRate = missRate;
+            this.wrongLaneRate = wrongLaneRate;
+        }
+
+        @Override
+        public Hit react(int beatNumber, int laneIndex) {
+            if (random.nextDouble() < missRate) return null;
+            long delay = Math.max(0, Math.round(meanMs + random.nextGaussian() * sdMs));
+            int lane = laneIndex;
+            if (random.nextDouble() < wrongLaneRate) {
+                lane = (laneIndex + 1 + random.nextInt(3)) % 4;
+            }
+            return new Hit(delay, lane);
+        }
+    }
+
+    /**
+     * Scripted player: replays fixed reaction delays (negative = no hit).
+     * A lane offset of 0 hits the required lane; anything else shifts to a wrong lane.
+     */
+    public static class ScriptedPlayer implements PlayerModel {
+        private final long[] delaysMs;
+        private final int[] laneOffsets;
+
+        public ScriptedPlayer(long[] delaysMs, int[] laneOffsets) {
+            this.delaysMs = delaysMs.clone();
+            this.laneOffsets = (laneOffsets != null) ? laneOffsets.clone() : new int[0];
+        }
+
+        @Override
+        public Hit react(int beatNumber, int laneIndex) {
+            int i = beatNumber % delaysMs.length;
+            if (delaysMs[i] < 0) return null;
+            int offset = (laneOffsets.length > 0) ? laneOffsets[beatNumber % laneOffsets.length] : 0;
+            return new Hit(delaysMs[i], Math.floorMod(laneIndex + offset, 4));
+        }
+    }
+
+    // ===== Statistics =====
+
+    /**
+     * Judgment counts, reaction latency and scheduling error for one or more sessions
+     */
+    public static class Stats {
+        private final Map<String, Integer> judgments = new LinkedHashMap<>();
+        private long[] latencies = new long[64];
+        private int latencyCount = 0;
+        private long maxScheduleErrorMs = 0;
+        private long totalScore = 0;
+        private int sessions = 0;
+        private final List<String> failures = new ArrayList<>();
+
+        void recordJudgment(String judgment, long latencyMs) {
+            // Group "MISS (timeout)" and "MISS (too late...)" etc. by their first word
+            String key = judgment.split(" ")[0];
+            judgments.merge(key, 1, Integer::sum);
+            if ("GOOD".equals(key)) {
+                totalScore++;
+                if (latencyCount == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[latencyCount++] = latencyMs;
+            }
+        }
+
+        void recordScheduleError(long errorMs) {
+            maxScheduleErrorMs = Math.max(maxScheduleErrorMs, Math.abs(errorMs));
+        }
+
+        synchronized void merge(Stats other) {
+            other.judgments.forEach((k, v) -> judgments.merge(k, v, Integer::sum));
+            for (int i = 0; i < other.latencyCount; i++) {
+                if (latencyCount == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[latencyCount++] = other.latencies[i];
+            }
+            maxScheduleErrorMs = Math.max(maxScheduleErrorMs, other.maxScheduleErrorMs);
+            totalScore += other.totalScore;
+            sessions += other.sessions;
+            failures.addAll(other.failures);
+        }
+
+        public long percentile(double p) {
+            if (latencyCount == 0) return 0;
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int idx = (int) Math.min(latencyCount - 1, Math.ceil(p / 100.0 * latencyCount) - 1);
+            return sorted[Math.max(0, idx)];
+        }
+
+        public Map<String, Integer> getJudgments() { return judgments; }
+        public long getMaxScheduleErrorMs() { return maxScheduleErrorMs; }
+        public List<String> getFailures() { return failures; }
+
+        public void print(PrintStream out) {
+            int total = judgments.values().stream().mapToInt(Integer::intValue).sum();
+            out.println("Sessions:        " + sessions + " (" + failures.size() + " failed)");
+            out.println("Beats judged:    " + total);
+            for (Map.Entry<String, Integer> e : judgments.entrySet()) {
+                out.printf("  %-14s %7d  (%.1f%%)%n", e.getKey(), e.getValue(), 100.0 * e.getValue() / Math.max(1, total));
+            }
+            out.printf("Mean score:      %.2f%n", sessions > 0 ? (double) totalScore / sessions : 0.0);
+            out.printf("GOOD latency ms: p50=%d p95=%d p99=%d max=%d%n",
+                    percentile(50), percentile(95), percentile(99), percentile(100));
+            out.println("Max schedule error: " + maxScheduleErrorMs + " ms");
+            for (int i = 0; i < Math.min(5, failures.size()); i++) {
+                out.println("  FAILED: " + failures.get(i));
+            }
+        }
+    }
+
+    // ===== Session =====
+
+    /**
+     * Run one session of the given number of levels and return its statistics
+     */
+    public static Stats runSession(DifficultyStrategy difficulty, PlayerModel player, int levels) {
+        VirtualClock clock = new VirtualClock(SESSION_LIMIT_MS);
+        SimSubject pads = new SimSubject();
+        SimSubject buttons = new SimSubject();
+
+        GameplaySubject gameplaySubject = new GameplaySubject(pads);
+        SystemControlSubject systemSubject = new SystemControlSubject(buttons);
+        MusicController music = new MusicController(new SilentPlayer(), SONGS, null, difficulty);
+        BeatJudge judge = new BeatJudge(gameplaySubject, difficulty.getBeatTempo(), clock);
+        GameLevelManager levelManager = new GameLevelManager(systemSubject, judge, music);
+        judge.setLevelManager(levelManager);
+        // Level changes run inline and at once: the virtual clock is single-threaded
+        levelManager.setTransitionExecutor(Runnable::run);
+        levelManager.setTransitionTiming(0, 0);
+
+        Stats stats = new Stats();
+        stats.sessions = 1;
+        long expectedGapMs = Math.round(difficulty.getBeatTempo() * 1000);
+
+        judge.registerObserver(new BeatObserver() {
+            private int beatNumber = 0;
+            private long activatedAt = -1;
+            private long resolvedAt = -1;
+            private boolean skipGap = true; // no inter-beat delay before the first beat / after WRONG LANE
+
+            @Override
+            public void onBeatActivated(int laneIndex) {
+                long now = clock.currentTimeMillis();
+                if (!skipGap && resolvedAt >= 0) {
+                    stats.recordScheduleError((now - resolvedAt) - expectedGapMs);
+                }
+                activatedAt = now;
+                Hit hit = player.react(beatNumber++, laneIndex);
+                if (hit != null) {
+                    byte packet = (byte) ((2 << 6) | (hit.laneIndex & 0x3F));
+                    clock.schedule(hit.delayMs, () -> pads.notifyObservers(new ArduinoPacket(packet)));
+                }
+            }
+
+            @Override
+            public void onHitResult(int laneIndex, String judgment) {
+                resolvedAt = clock.currentTimeMillis();
+                skipGap = judgment.contains("WRONG LANE");
+                stats.recordJudgment(judgment, resolvedAt - activatedAt);
+            }
+
+            @Override
+            public void onSequenceEnd() {
+                skipGap = true;
+            }
+
+            @Override
+            public void onBeatmapChanged(String msg) {
+                skipGap = true;
+            }
+
+            @Override
+            public void onBeatmapIndexChanged(int beatmapIndex) {
+            }
+        });
+
+        levelManager.registerLevelObserver(new GameLevelManager.LevelChangeObserver() {
+            private int played = 0;
+
+            @Override
+            public void onLevelChanged(int levelIndex, String levelName) {
+            }
+
+            @Override
+            public void onPauseStateChanged(boolean isPaused) {
+            }
+
+            @Override
+            public void onSequenceEnd() {
+                played++;
+                if (played < levels) {
+                    byte next = (byte) ((3 << 6) | 1); // AR3 button 1 = next level
+                    clock.schedule(INTERMISSION_MS, () -> buttons.notifyObservers(new ArduinoPacket(next)));
+                } else {
+                    judge.stop();
+                }
+            }
+        });
+
+        try {
+            clock.runTask();
+        } catch (RuntimeException e) {
+            stats.failures.add(e.toString());
+        }
+        return stats;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int difficultyLevel = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int levels = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42L;
+
+        DifficultyStrategy difficulty = DifficultyFactory.getDifficulty(difficultyLevel);
+        PrintStream out = System.out;
+        out.println("[HeadlessSimulation] " + sessions + " sessions x " + levels + " levels, "
+                + difficulty.getDescription() + ", threads=" + threads + ", seed=" + seed);
+
+        // The game classes log every event; silence them for batch runs
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Stats total = new Stats();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Stats>> results = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                long sessionSeed = seed + i;
+                results.add(pool.submit(() -> runSession(difficulty,
+                        new RandomPlayer(sessionSeed, 450, 180, 0.05, 0.05), levels)));
+            }
+            for (Future<Stats> f : results) {
+                total.merge(f.get());
+            }
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+        double elapsedSec = (System.nanoTime() - start) / 1e9;
+
+        total.print(out);
+        out.printf("Elapsed: %.2f s (%.0f sessions/min)%n", elapsedSec, sessions / elapsedSec * 60);
+    }
+
+    // ===== Headless stand-ins =====
+
+    /** Subject that simulated hardware packets are pushed through */
+    private static class SimSubject implements Subject {
+        private final List<Observer> observers = new ArrayList<>();
+
+        @Override
+        public void registerObserver(Observer o) {
+            if (!observers.contains(o)) observers.add(o);
+        }
+
+        @Override
+        public void removeObsever(Observer o) {
+            observers.remove(o);
+        }
+
+        @Override
+        public void notifyObservers(ArduinoPacket pkt) {
+            for (Observer o : new ArrayList<>(observers)) {
+                o.update(pkt);
+            }
+        }
+    }
+
+    /** MusicPlayer that plays nothing */
+    private static class SilentPlayer implements MusicPlayer {
+        @Override public void play(int songIndex) { }
+        @Override public void pause() { }
+        @Override public void resume() { }
+        @Override public void stop() { }
+        @Override public void setTempo(double factor) { }
+    }
+}
@@ -0,0 +1,205 @@
+import javax.sound.sampled.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LatencyCalibrator - Measures the fixed input latency of a pad device.
+ *
+ * Plays a metronome click through the speakers while the player taps along on
+ * any pad. Each tap is matched to the nearest click; the offset is the robust
+ * median of (tap time - click time) after dropping outliers, so a few early or
+ * late taps do not skew it. The result is saved per device in LatencyProfiles
+ * and subtracted from hit times by BeatJudge before windowing.
+ */
+public class LatencyCalibrator implements Observer {
+
+    private static final float SAMPLE_RATE = 44100f;
+    private static final int COUNT_IN_CLICKS = 4;   // clicks before taps are recorded
+    private static final int MIN_TAPS = 8;
+    private static final int CLICK_MS = 15;
+
+    private final Subject padSource;
+    private final String deviceId;
+
+    private final List<Long> tapNanos = new ArrayList<>();
+    private volatile boolean recording = false;
+
+    public LatencyCalibrator(Subject padSource, String deviceId) {
+        if (padSource == null || deviceId == null) {
+            throw new IllegalArgumentException("Pad source and device id cannot be null");
+        }
+        this.padSource = padSource;
+        this.deviceId = deviceId;
+    }
+
+    @Override
+    public void update(ArduinoPacket pkt) {
+        if (!recording || pkt.getArduinoID() != 2) return;
+        long now = System.nanoTime();
+        synchronized (tapNanos) {
+            tapNanos.add(now);
+        }
+    }
+
+    /**
+     * Run one calibration pass (blocks for the whole metronome), save and return the offset.
+     *
+     * @param clicks     number of clicks to tap along with (after the count-in)
+     * @param intervalMs spacing of the clicks
+     * @return offset in ms (positive = the device reports hits late)
+     */
+    public double calibrate(int clicks, long intervalMs) throws LineUnavailableException {
+        System.out.println("[LatencyCalibrator] Calibrating " + deviceId + ": tap any pad on every click after "
+                + COUNT_IN_CLICKS + " count-in clicks (" + clicks + " clicks, " + intervalMs + " ms apart)");
+
+        synchronized (tapNanos) {
+            tapNanos.clear();
+        }
+        padSource.registerObserver(this);
+        double[] clickStarts;
+        try {
+            recording = true;
+            clickStarts = playMetronome(COUNT_IN_CLICKS + clicks, intervalMs);
+        } finally {
+            recording = false;
+            padSource.removeObsever(this);
+        }
+
+        double[] offsets = matchTaps(clickStarts, intervalMs);
+        if (offsets.length < MIN_TAPS) {
+            throw new IllegalStateException("Only " + offsets.length + " usable taps (need " + MIN_TAPS + ")");
+        }
+
+        double offsetMs = robustOffset(offsets);
+        System.out.printf("[LatencyCalibrator] %s: %d taps, offset=%.2f ms%n", deviceId, offsets.length, offsetMs);
+        LatencyProfiles.setOffsetMs(deviceId, offsetMs);
+        return offsetMs;
+    }
+
+    /**
+     * Pair each tap with the nearest non-count-in click and return the offsets in ms
+     */
+    private double[] matchTaps(double[] clickStarts, long intervalMs) {
+        List<Long> taps;
+        synchronized (tapNanos) {
+            taps = new ArrayList<>(tapNanos);
+        }
+        double halfInterval = intervalMs * 1e6 / 2;
+        double[] offsets = new double[taps.size()];
+        int n = 0;
+        for (long tap : taps) {
+            int nearest = -1;
+            double best = Double.MAX_VALUE;
+            for (int k = COUNT_IN_CLICKS; k < clickStarts.length; k++) {
+                double d = Math.abs(tap - clickStarts[k]);
+                if (d < best) {
+                    best = d;
+                    nearest = k;
+                }
+            }
+            if (nearest >= 0 && best <= halfInterval) {
+                offsets[n++] = (tap - clickStarts[nearest]) / 1e6;
+            }
+        }
+        return Arrays.copyOf(offsets, n);
+    }
+
+    /**
+     * Median of the offsets after dropping values more than 3 scaled MADs from the median
+     */
+    static double robustOffset(double[] offsets) {
+        double median = median(offsets);
+        double[] deviations = new double[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            deviations[i] = Math.abs(offsets[i] - median);
+        }
+        // 1.4826 * MAD estimates the standard deviation; floor it so identical taps do not reject everything
+        double limit = Math.max(5.0, 3 * 1.4826 * median(deviations));
+
+        double[] kept = new double[offsets.length];
+        int n = 0;
+        for (double o : offsets) {
+            if (Math.abs(o - median) <= limit) kept[n++] = o;
+        }
+        return median(Arrays.copyOf(kept, n));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return (sorted.length % 2 == 1) ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2.0;
+    }
+
+    /**
+     * Play the clicks and return the nanoTime at which each click is heard.
+     * The line's frame position is sampled while playing to map frames to nanoTime,
+     * so the click times include the audio output latency, not just the write time.
+     */
+    private double[] playMetronome(int totalClicks, long intervalMs) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        SourceDataLine line = AudioSystem.getSourceDataLine(format);
+        line.open(format);
+
+        int intervalFrames = (int) (SAMPLE_RATE * intervalMs / 1000);
+        int clickFrames = (int) (SAMPLE_RATE * CLICK_MS / 1000);
+        byte[] block = new byte[intervalFrames * 2];
+
+        // frame -> nanoTime anchors; the median rejects polls that were descheduled
+        List<Double> anchors = new ArrayList<>();
+        Thread poller = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long frame = line.getLongFramePosition();
+                long now = System.nanoTime();
+                if (frame > 0) {
+                    synchronized (anchors) {
+                        anchors.add(now - frame * 1e9 / SAMPLE_RATE);
+                    }
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }, "LatencyCalibratorClock");
+
+        line.start();
+        poller.start();
+        try {
+            for (int k = 0; k < totalClicks; k++) {
+                Arrays.fill(block, (byte) 0);
+                double freq = (k < COUNT_IN_CLICKS) ? 880.0 : 1760.0; // lower pitch for the count-in
+                for (int i = 0; i < clickFrames; i++) {
+                    double env = 1.0 - (double) i / clickFrames;
+                    short v = (short) (Math.sin(2 * Math.PI * freq * i / SAMPLE_RATE) * env * 20000);
+                    block[i * 2] = (byte) (v & 0xFF);
+                    block[i * 2 + 1] = (byte) ((v >> 8) & 0xFF);
+                }
+                line.write(block, 0, block.length);
+            }
+            line.drain();
+        } finally {
+            poller.interrupt();
+            line.stop();
+            line.close();
+        }
+
+        double origin;
+        synchronized (anchors) {
+            if (anchors.isEmpty()) {
+                throw new IllegalStateException("Audio line never reported a frame position");
+            }
+            double[] a = new double[anchors.size()];
+            for (int i = 0; i < a.length; i++) a[i] = anchors.get(i);
+            origin = median(a);
+        }
+
+        double[] clickStarts = new double[totalClicks];
+        for (int k = 0; k < totalClicks; k++) {
+            clickStarts[k] = origin + (double) k * intervalFrames * 1e9 / SAMPLE_RATE;
+        }
+        return clickStarts;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * LatencyMode - How much audio the player keeps queued ahead of the speakers.
+ *
+ *  - bufferFrames: size of the audio line's buffer (0 = let the driver choose,
+ *    often 100 ms or more). This bounds how late a tempo change or sound is heard.
+ *  - blockFrames: frames rendered and written per step. Smaller blocks keep a small
+ *    buffer topped up more evenly, at the cost of more wake-ups.
+ *  - prefillFrames: frames queued before the line is started, so the first blocks
+ *    do not play out faster than the render thread can follow.
+ *
+ * Frame counts are for 44.1/48 kHz; a 1024-frame buffer is about 23 ms.
+ */
+public final class LatencyMode {
+
+    /** Driver-sized buffer and 4 KB writes, as the player always did */
+    public static final LatencyMode DEFAULT = new LatencyMode("default", 0, 1024, 0);
+
+    /** About 23 ms of buffer for rhythm play; needs a machine that keeps up (watch the underrun count) */
+    public static final LatencyMode LOW = new LatencyMode("low", 1024, 256, 512);
+
+    /** Middle ground for slower machines, about 46 ms */
+    public static final LatencyMode BALANCED = new LatencyMode("balanced", 2048, 512, 1024);
+
+    private final String name;
+    private final int bufferFrames;
+    private final int blockFrames;
+    private final int prefillFrames;
+
+    public LatencyMode(String name, int bufferFrames, int blockFrames, int prefillFrames) {
+        if (blockFrames <= 0) throw new IllegalArgumentException("Block must be at least one frame");
+        if (bufferFrames != 0 && bufferFrames < blockFrames * 2) {
+            throw new IllegalArgumentException("Buffer must hold at least two blocks");
+        }
+        this.name = name;
+        this.bufferFrames = bufferFrames;
+        this.blockFrames = blockFrames;
+        this.prefillFrames = Math.max(0, prefillFrames);
+    }
+
+    /**
+     * Preset by name ("default", "low", "balanced"), or DEFAULT if unknown
+     */
+    public static LatencyMode forName(String name) {
+        if (name != null) {
+            for (LatencyMode mode : new LatencyMode[] {DEFAULT, LOW, BALANCED}) {
+                if (mode.name.equalsIgnoreCase(name)) return mode;
+            }
+            System.err.println("[LatencyMode] Unknown mode " + name + ", using default");
+        }
+        return DEFAULT;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBufferFrames() {
+        return bufferFrames;
+    }
+
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    public int getPrefillFrames() {
+        return prefillFrames;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (buffer=" + (bufferFrames == 0 ? "driver" : bufferFrames + "") +
+                ", block=" + blockFrames + ", prefill=" + prefillFrames + " frames)";
+    }
+}
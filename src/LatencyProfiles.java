@@ -0,0 +1,62 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * LatencyProfiles - Persists the measured input latency of each pad device.
+ * Offsets are stored in latency.properties, keyed by serial port path
+ * (or "keyboard" for EmulatedDriver), in milliseconds.
+ */
+public class LatencyProfiles {
+
+    public static final String KEYBOARD_DEVICE = "keyboard";
+    private static final File FILE = new File("latency.properties");
+
+    private LatencyProfiles() {
+    }
+
+    /**
+     * Stored offset for a device in ms, or 0 if it was never calibrated
+     */
+    public static synchronized double getOffsetMs(String deviceId) {
+        Properties props = load();
+        String value = props.getProperty(deviceId);
+        if (value == null) return 0.0;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[LatencyProfiles] Bad offset for " + deviceId + ": " + value);
+            return 0.0;
+        }
+    }
+
+    /**
+     * Store the offset for a device (overwrites any previous calibration)
+     */
+    public static synchronized void setOffsetMs(String deviceId, double offsetMs) {
+        Properties props = load();
+        props.setProperty(deviceId, String.format(java.util.Locale.ROOT, "%.2f", offsetMs));
+        try (OutputStream out = new FileOutputStream(FILE)) {
+            props.store(out, "Beat The Stress input latency per device (ms)");
+            System.out.printf("[LatencyProfiles] Saved %s -> %.2f ms%n", deviceId, offsetMs);
+        } catch (IOException e) {
+            System.err.println("[LatencyProfiles] Could not save " + FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static Properties load() {
+        Properties props = new Properties();
+        if (FILE.exists()) {
+            try (InputStream in = new FileInputStream(FILE)) {
+                props.load(in);
+            } catch (IOException e) {
+                System.err.println("[LatencyProfiles] Could not read " + FILE + ": " + e.getMessage());
+            }
+        }
+        return props;
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LevelPrefetcher - Prepares the songs next to the current level in the background.
+ *
+ * After a level starts, the previous and next songs in the playlist are prepared
+ * and their charts compiled/mapped on a low-priority thread, so an AR3 level change
+ * only has to swap in a source that is ready. Plain PCM WAVs are just mapped and
+ * their first seconds paged in; other files are decoded into the shared
+ * DecodedAudioCache (unless the player streams). Only those neighbours are kept, so at most two extra songs are
+ * held on top of the one playing.
+ */
+public class LevelPrefetcher {
+
+    private final ExecutorService worker;
+    private volatile DecodedAudioCache cache;
+    private static final double PREFAULT_SEC = 2.0;
+
+    private final Map<String, Future<PcmSource>> audio = new ConcurrentHashMap<>();
+
+    public LevelPrefetcher(DecodedAudioCache cache) {
+        this.cache = cache;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "LevelPrefetchThread");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY); // never compete with the render thread
+            return t;
+        });
+    }
+
+    /**
+     * Start preparing the levels either side of songIndex and drop anything else
+     *
+     * @param decode whether songs that cannot be mapped may be decoded whole into memory
+     */
+    public void prefetchAround(String[] playlist, int songIndex, boolean decode) {
+        if (playlist.length < 2) return;
+
+        Set<String> wanted = new HashSet<>();
+        wanted.add(playlist[(songIndex + 1) % playlist.length]);
+        wanted.add(playlist[(songIndex - 1 + playlist.length) % playlist.length]);
+        wanted.remove(playlist[songIndex]);
+
+        // Forget songs that are no longer adjacent (cancels them if not started yet)
+        for (Iterator<Map.Entry<String, Future<PcmSource>>> it = audio.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Future<PcmSource>> e = it.next();
+            if (!wanted.contains(e.getKey())) {
+                e.getValue().cancel(false);
+                it.remove();
+            }
+        }
+
+        for (String path : wanted) {
+            audio.computeIfAbsent(path, p -> worker.submit(() -> {
+                long start = System.nanoTime();
+                PcmSource source = MappedPcmSource.tryOpen(p);
+                if (source != null) {
+                    ((MappedPcmSource) source).prefault(PREFAULT_SEC);
+                } else if (decode) {
+                    source = cache.get(p);
+                }
+                // Compile + map the charts while we are at it (the difficulty may change before the level)
+                for (int level = DifficultyFactory.MIN_LEVEL; level <= DifficultyFactory.MAX_LEVEL; level++) {
+                    CompiledChart.forSong(p, level);
+                }
+                System.out.printf("[LevelPrefetcher] Ready: %s (%.0f ms)%n", p, (System.nanoTime() - start) / 1e6);
+                return source;
+            }));
+        }
+    }
+
+    /**
+     * Take a prefetched song. Waits if it is still decoding (it is further along than
+     * a fresh load would be); returns null if it was never requested or failed.
+     */
+    public PcmSource take(String path) {
+        Future<PcmSource> f = audio.remove(path);
+        if (f == null) return null;
+        try {
+            if (!f.isDone()) {
+                System.out.println("[LevelPrefetcher] Waiting for " + path + " to finish decoding");
+            }
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("[LevelPrefetcher] Prefetch of " + path + " failed: " + e.getCause());
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    public void setCache(DecodedAudioCache cache) {
+        this.cache = cache;
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+        audio.clear();
+    }
+}
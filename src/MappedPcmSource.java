@@ -0,0 +1,215 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedPcmSource - Plays a PCM WAV straight out of a memory-mapped file.
+ *
+ * The RIFF header is parsed once to find the "fmt " and "data" chunks; the data
+ * chunk is then mapped read-only and viewed as little-endian shorts, so a read is
+ * a bulk copy out of the page cache with no decoding. Opening costs a header parse
+ * whatever the song length, and repeat plays (or other stations on the same disk)
+ * find the pages already cached. 24/32-bit integer and 32-bit float WAVs are mapped
+ * too and rounded to 16 bits as they are read (float clipped to full scale).
+ * Anything else (compressed, 8-bit, big-endian RIFX) is left to AudioSystem:
+ * tryOpen() returns null.
+ */
+public class MappedPcmSource implements PcmSource {
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final String path;
+    private final AudioFormat fileFormat;  // as stored
+    private final AudioFormat format;      // as read: 16-bit signed little-endian
+    private final int channels;
+    private final int sampleBytes;
+    private final boolean floating;
+    private final MappedByteBuffer data;
+    private final ShortBuffer samples;     // 16-bit files only
+    private final long frameLength;
+    private volatile int prefaultChecksum;
+
+    private MappedPcmSource(String path, AudioFormat fileFormat, MappedByteBuffer data) {
+        this.path = path;
+        this.fileFormat = fileFormat;
+        this.channels = Math.max(1, fileFormat.getChannels());
+        this.format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, fileFormat.getSampleRate(), 16,
+                channels, channels * 2, fileFormat.getSampleRate(), false);
+        this.sampleBytes = fileFormat.getSampleSizeInBits() / 8;
+        this.floating = fileFormat.getEncoding() == AudioFormat.Encoding.PCM_FLOAT;
+        this.data = data;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        this.samples = sampleBytes == 2 ? data.asShortBuffer() : null;
+        this.frameLength = data.capacity() / fileFormat.getFrameSize();
+    }
+
+    /**
+     * Map a WAV file if it holds 16/24/32-bit integer or 32-bit float PCM, or return
+     * null so the caller can fall back to AudioSystem decoding
+     */
+    public static MappedPcmSource tryOpen(String path) {
+        File file = new File(path);
+        if (!file.isFile() || !path.toLowerCase().endsWith(".wav")) return null;
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            if (readAt(ch, header, 0) < 12 || header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")) {
+                return null;
+            }
+
+            // Walk the chunks: fmt (format) and data (samples); skip anything else (LIST, fact...)
+            ByteBuffer chunk = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+            AudioFormat format = null;
+            long pos = 12;
+            while (pos + 8 <= fileSize) {
+                chunk.clear().limit(8);
+                if (readAt(ch, chunk, pos) < 8) return null;
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                long body = pos + 8;
+
+                if (id == fourCC("fmt ")) {
+                    chunk.clear().limit((int) Math.min(size, chunk.capacity()));
+                    if (readAt(ch, chunk, body) < 16) return null;
+                    format = pcmFormat(chunk, (int) Math.min(size, chunk.capacity()));
+                    if (format == null) return null;
+                } else if (id == fourCC("data")) {
+                    if (format == null) return null;
+                    // Files written by streaming recorders can claim more data than they hold
+                    long length = Math.min(size, fileSize - body);
+                    length -= length % format.getFrameSize();
+                    if (length > Integer.MAX_VALUE) return null;
+                    MappedByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, body, length);
+                    System.out.println("[MappedPcmSource] Mapped " + path + " (" + format + ")");
+                    return new MappedPcmSource(path, format, data);
+                }
+                pos = body + size + (size & 1); // chunks are padded to even sizes
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("[MappedPcmSource] Could not map " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Format from a fmt chunk if it is 16/24/32-bit integer or 32-bit float PCM, else null
+     */
+    private static AudioFormat pcmFormat(ByteBuffer fmt, int size) {
+        int tag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12) & 0xFFFF;
+        int bits = fmt.getShort(14) & 0xFFFF;
+
+        if (tag == WAVE_FORMAT_EXTENSIBLE) {
+            // Sub-format GUID starts at byte 24; its first two bytes are the real tag
+            if (size < 26) return null;
+            tag = fmt.getShort(24) & 0xFFFF;
+        }
+        if (channels < 1 || blockAlign != channels * (bits / 8)) {
+            return null;
+        }
+        if (tag == WAVE_FORMAT_PCM && (bits == 16 || bits == 24 || bits == 32)) {
+            return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, bits, channels, blockAlign, sampleRate, false);
+        }
+        if (tag == WAVE_FORMAT_IEEE_FLOAT && bits == 32) {
+            return new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, sampleRate, bits, channels, blockAlign, sampleRate, false);
+        }
+        return null;
+    }
+
+    private static int readAt(FileChannel ch, ByteBuffer dst, long pos) throws IOException {
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos + total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static int fourCC(String s) {
+        return (s.charAt(0) & 0xFF) | (s.charAt(1) & 0xFF) << 8 | (s.charAt(2) & 0xFF) << 16 | (s.charAt(3) & 0xFF) << 24;
+    }
+
+    /**
+     * Touch the pages of the first seconds so the first reads do not fault on disk
+     */
+    public void prefault(double seconds) {
+        int bytes = (int) Math.min(data.capacity(), (long) (seconds * format.getSampleRate()) * fileFormat.getFrameSize());
+        int sum = 0;
+        for (int i = 0; i < bytes; i += 4096) {
+            sum += data.get(i);
+        }
+        prefaultChecksum = sum; // published so the reads are not optimised away
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public long getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public int read(long frame, short[] dst, int offset, int frames) {
+        long available = frameLength - frame;
+        if (frame < 0 || available <= 0) return 0;
+        int n = (int) Math.min(frames, available);
+        int first = (int) (frame * channels);
+        if (samples != null) {
+            samples.get(first, dst, offset, n * channels); // absolute bulk get, no shared position
+            return n;
+        }
+        for (int i = 0; i < n * channels; i++) {
+            dst[offset + i] = sampleAt((long) (first + i) * sampleBytes);
+        }
+        return n;
+    }
+
+    /**
+     * One 24/32-bit integer or float sample rounded to 16 bits (absolute gets only)
+     */
+    private short sampleAt(long byteIndex) {
+        int b = (int) byteIndex;
+        long v;
+        if (floating) {
+            float f = data.getFloat(b);
+            v = Math.round(Math.max(-1f, Math.min(f, 1f)) * 32767f);
+        } else if (sampleBytes == 3) {
+            int s = (data.get(b) & 0xFF) | (data.get(b + 1) & 0xFF) << 8 | data.get(b + 2) << 16;
+            v = (s + 0x80) >> 8;
+        } else {
+            v = ((long) data.getInt(b) + 0x8000) >> 16;
+        }
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+    }
+
+    @Override
+    public void close() {
+        // A mapping cannot be released explicitly; it goes when the buffer is collected
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPcmSource{" + path + ", frames=" + frameLength + "}";
+    }
+}
@@ -9,6 +9,11 @@ public class MediumDifficulty implements DifficultyStrategy {
         return 2.5; // 1 seconds inter-beat delay
     }
     
+    @Override
+    public double getChartNoteSpacing() {
+        return 1.0; // Quarter notes
+    }
+    
     @Override
     public String getDescription() {
         return "Medium (music_tempo=0, beat_tempo=2.0s)";
@@ -1,22 +1,23 @@
-import java.util.ArrayList;
-
 /**
  * MusicController - Observes TempoSubject to adjust music playback speed.
  * Uses Strategy Pattern for difficulty-based tempo and beat timing.
+ * Tempo changes are handed to the player as ramps; the player's render thread
+ * does the gliding, so this class has no thread of its own.
  */
-public class MusicController implements Runnable, Observer {
+public class MusicController implements Observer {
     
     private final MusicPlayer player;
     private final TempoSubject tempoSubject;
     private final DifficultyStrategy difficultyStrategy;
     
     // Tempo control
+    public static final int MIN_MUSIC_TEMPO = -2;
+    public static final int MAX_MUSIC_TEMPO = 3;
     private double targetTempoScale = 1.0;  // desired tempo factor
-    private double currentTempoScale = 1.0; // what the player is currently using
     
-    // Smoothing for tempo changes (to avoid instant jumps)
-    private static final double TEMPO_SMOOTHING_STEP = 0.05; // 5% per update tick
-    private static final long TEMPO_UPDATE_INTERVAL_MS = 50; // update every 50 ms
+    // Smoothing for tempo changes (to avoid instant jumps): glide at 1.0x per second,
+    // so 0.8x -> 1.3x takes half a second
+    private static final double TEMPO_SLEW_PER_SEC = 1.0;
     
     // Song selection
     private int currentSongIndex = 0;
@@ -24,9 +25,7 @@ public class MusicController implements Runnable, Observer {
     
     // Play/pause state
     private boolean isPaused = false;
-    private boolean running = true;
-    
-    private Thread t1;
+    private boolean started = false;
     
     /**
      * Constructor - initializes with difficulty strategy
@@ -48,12 +47,19 @@ public class MusicController implements Runnable, Observer {
         // Initialize tempo based on difficulty strategy
         int musicTempo = difficultyStrategy.getMusicTempo();
         setTempo(musicTempo);
-        
-        this.t1 = new Thread(this);
     }
     
+    /**
+     * Start the first song
+     */
     public void start() {
-        t1.start();
+        System.out.println("[MusicController] Started.");
+        started = true;
+        if (totalSongs.length > 0) {
+            startSong(currentSongIndex);
+        } else {
+            System.err.println("[MusicController] No songs configured.");
+        }
     }
     
     /**
@@ -62,17 +68,36 @@ public class MusicController implements Runnable, Observer {
      */
     public synchronized void setTempo(int musicTempo) {
         // Clamp to valid range [-2, 3]
-        int clamped = Math.max(-2, Math.min(musicTempo, 3));
-        
-        // Map from [-2, 3] to [0.8, 1.3]
-        // Linear mapping: -2 -> 0.8, 0 -> 1.0, 3 -> 1.3
-        double newTempo = 1.0 + 0.1 * clamped;
+        int clamped = Math.max(MIN_MUSIC_TEMPO, Math.min(musicTempo, MAX_MUSIC_TEMPO));
+        double newTempo = tempoFor(clamped);
         
+        // Before the music starts there is nothing to glide from
+        long rampMs = started ? Math.round(Math.abs(newTempo - targetTempoScale) / TEMPO_SLEW_PER_SEC * 1000) : 0;
         targetTempoScale = newTempo;
+        player.setTempo(targetTempoScale, rampMs);
         System.out.printf("[MusicController] Music tempo=%d -> target tempo=%.2fx%n",
                 clamped, targetTempoScale);
     }
     
+    /**
+     * Tempo factor for a music_tempo value
+     * Linear mapping: -2 -> 0.8, 0 -> 1.0, 3 -> 1.3
+     */
+    public static double tempoFor(int musicTempo) {
+        return 1.0 + 0.1 * musicTempo;
+    }
+    
+    /**
+     * Every tempo factor setTempo() can ask for (what TempoVariantRenderer pre-renders)
+     */
+    public static double[] tempoSteps() {
+        double[] steps = new double[MAX_MUSIC_TEMPO - MIN_MUSIC_TEMPO + 1];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = tempoFor(MIN_MUSIC_TEMPO + i);
+        }
+        return steps;
+    }
+    
     /**
      * Get the inter-beat delay from the difficulty strategy
      */
@@ -94,32 +119,6 @@ public class MusicController implements Runnable, Observer {
         }
     }
     
-    @Override
-    public void run() {
-        System.out.println("[MusicController] Thread started.");
-        
-        // Start with the first song
-        if (totalSongs.length > 0) {
-            startSong(currentSongIndex);
-        } else {
-            System.err.println("[MusicController] No songs configured.");
-        }
-        
-        // Main loop: gradually adjust tempo towards targetTempoScale
-        while (running) {
-            smoothTempoTowardsTarget();
-            try {
-                Thread.sleep(TEMPO_UPDATE_INTERVAL_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        
-        // Optional: stop playback on exit
-        player.stop();
-        System.out.println("[MusicController] Thread stopped.");
-    }
-    
     public void startSong(int index) {
         if (index < 0 || index >= totalSongs.length) {
             System.err.println("[MusicController] Invalid song index: " + index);
@@ -129,7 +128,6 @@ public class MusicController implements Runnable, Observer {
         isPaused = false;
         System.out.println("[MusicController] Starting song #" + currentSongIndex);
         player.play(currentSongIndex);
-        player.setTempo(currentTempoScale);
     }
     
     public void nextSong() {
@@ -148,62 +146,65 @@ public class MusicController implements Runnable, Observer {
     
     public void togglePlayPause() {
         if (isPaused) {
-            System.out.println("[MusicController] Resuming song #" + currentSongIndex);
-            isPaused = false;
-            player.resume();
+            resume();
         } else {
-            System.out.println("[MusicController] Pausing song #" + currentSongIndex);
-            isPaused = true;
-            player.pause();
+            pause();
         }
     }
     
-    private void smoothTempoTowardsTarget() {
-        double diff = targetTempoScale - currentTempoScale;
-        
-        // Small enough difference: snap to target
-        if (Math.abs(diff) < 0.01) {
-            if (currentTempoScale != targetTempoScale) {
-                currentTempoScale = targetTempoScale;
-                player.setTempo(currentTempoScale);
-                System.out.printf("[MusicController] Tempo snapped to %.2fx%n", currentTempoScale);
-            }
-            return;
-        }
-        
-        // Move a small step toward target
-        double step = TEMPO_SMOOTHING_STEP;
-        if (diff < 0) step = -step;
-        
-        currentTempoScale += step;
-        player.setTempo(currentTempoScale);
-        
-        System.out.printf("[MusicController] Tempo adjusted: now %.2fx (target %.2fx)%n",
-                currentTempoScale, targetTempoScale);
+    /**
+     * Pause the song (no effect if already paused)
+     */
+    public void pause() {
+        if (isPaused) return;
+        System.out.println("[MusicController] Pausing song #" + currentSongIndex);
+        isPaused = true;
+        player.pause();
+    }
+    
+    /**
+     * Resume the song (no effect if not paused)
+     */
+    public void resume() {
+        if (!isPaused) return;
+        System.out.println("[MusicController] Resuming song #" + currentSongIndex);
+        isPaused = false;
+        player.resume();
+    }
+    
+    /**
+     * Fade the music to volume (0..1) over ms of playback
+     */
+    public void fadeTo(double volume, long ms) {
+        player.setVolume(volume, ms);
     }
     
     public synchronized void stop() {
         System.out.println("[MusicController] Stop requested.");
-        this.running = false;
+        started = false;
         
         if (player != null) {
             player.stop();
         }
         
-        try {
-            if (t1 != null) {
-                System.out.println("[MusicController] Waiting for controller thread to join...");
-                t1.join();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            Thread.currentThread().interrupt();
-        }
-        
         System.out.println("[MusicController] Stop complete.");
     }
     
     public int getCurrentSongIndex() {
         return currentSongIndex;
     }
+    
+    /**
+     * Difficulty this controller plays songs at
+     */
+    public DifficultyStrategy getDifficultyStrategy() {
+        return difficultyStrategy;
+    }
+    
+    /**
+     * File path of a song in the playlist, or null if the index is out of range
+     */
+    public String getSongPath(int index) {
+        return (index >= 0 && index < totalSongs.length) ? totalSongs[index] : null;
+    }
 }
@@ -4,4 +4,17 @@ public interface MusicPlayer {
     void resume();               // resume playback
     void stop();                 // stop playback
     void setTempo(double factor);// 1.0 = normal speed, 1.5 = 50% faster
+    
+    // glide to a tempo over rampMs of playback (players without ramping jump straight there)
+    default void setTempo(double factor, long rampMs) {
+        setTempo(factor);
+    }
+    
+    // music volume 0..1, reached over rampMs (players without a volume stage ignore it)
+    default void setVolume(double volume, long rampMs) { }
+    
+    // where playback is, from what the audio device is playing; readable from any
+    // thread without locking (players without an output clock report 0)
+    default long getSongTimeNanos() { return 0; }   // position in the song being heard
+    default long getOutputTimeNanos() { return 0; } // audio played out since the song started
 }
@@ -0,0 +1,132 @@
+import javax.sound.sampled.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OutputFormatNegotiator - Picks an output format the device plays without converting.
+ *
+ * Opening the line in the song's own format makes PulseAudio/ALSA resample anything
+ * the device does not run at, with extra buffering and latency on top of ours.
+ * Instead, the formats the output mixer advertises for SourceDataLines are read once
+ * and each song gets a rate and sample size from that list; the player converts the
+ * rate itself (ResampledPcmSource, folded into ResamplingStretch when that is the
+ * engine) and packs its 16-bit samples to the sample size chosen.
+ *
+ * Software mixers advertise NOT_SPECIFIED rates and do not say what they run at, so
+ * for them the configured device rate is used (e.g. 48000 for PipeWire), or the
+ * song's own rate if none is set.
+ */
+public class OutputFormatNegotiator {
+
+    private static final int[] SAMPLE_SIZES = {16, 24, 32};        // preference order; we render 16-bit
+    private static final float[] PREFERRED_RATES = {48000f, 44100f}; // when the song's rate is not listed
+
+    private final float deviceRate; // 0 = work it out from the mixer
+    private final Map<String, AudioFormat> chosen = new HashMap<>();
+    private List<AudioFormat> advertised;
+
+    /**
+     * @param deviceRate the device's native rate if known, or 0 to use what the mixer lists
+     */
+    public OutputFormatNegotiator(float deviceRate) {
+        this.deviceRate = Math.max(0f, deviceRate);
+    }
+
+    public float getDeviceRate() {
+        return deviceRate;
+    }
+
+    /**
+     * Output format for a song (16-bit signed little-endian PCM in), remembered per song format
+     */
+    public synchronized AudioFormat negotiate(AudioFormat song) {
+        String key = song.toString();
+        AudioFormat format = chosen.get(key);
+        if (format != null) return format;
+
+        if (advertised == null) {
+            advertised = queryMixer();
+        }
+        int channels = Math.max(1, song.getChannels());
+        float rate = chooseRate(song.getSampleRate(), channels);
+        for (int bits : SAMPLE_SIZES) {
+            AudioFormat candidate = pcm(rate, bits, channels);
+            if (isAdvertised(candidate)
+                    && AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, candidate))) {
+                format = candidate;
+                break;
+            }
+        }
+        if (format == null) {
+            // Nothing listed fits: open in the song's format and let the system convert, as before
+            format = pcm(song.getSampleRate(), 16, channels);
+        }
+
+        chosen.put(key, format);
+        System.out.println("[OutputFormatNegotiator] " + song + " -> " + format);
+        return format;
+    }
+
+    /**
+     * The song's rate if the device lists it (or lists no rates at all), else a common
+     * rate it does list; a configured device rate wins
+     */
+    private float chooseRate(float songRate, int channels) {
+        if (deviceRate > 0) return deviceRate;
+
+        List<Float> rates = new ArrayList<>();
+        for (AudioFormat f : advertised) {
+            boolean channelsFit = f.getChannels() == AudioSystem.NOT_SPECIFIED || f.getChannels() == channels;
+            if (channelsFit && f.getSampleRate() != AudioSystem.NOT_SPECIFIED) {
+                rates.add(f.getSampleRate());
+            }
+        }
+        if (rates.isEmpty() || rates.contains(songRate)) return songRate;
+        for (float preferred : PREFERRED_RATES) {
+            if (rates.contains(preferred)) return preferred;
+        }
+        float best = 0;
+        for (float r : rates) best = Math.max(best, r);
+        return best;
+    }
+
+    private boolean isAdvertised(AudioFormat candidate) {
+        for (AudioFormat f : advertised) {
+            if (candidate.matches(f)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * PCM formats the default mixer offers for output lines (all mixers if it offers none)
+     */
+    private static List<AudioFormat> queryMixer() {
+        Line.Info wanted = new Line.Info(SourceDataLine.class);
+        Line.Info[] infos;
+        try {
+            infos = AudioSystem.getMixer(null).getSourceLineInfo(wanted);
+        } catch (Exception e) {
+            infos = new Line.Info[0];
+        }
+        if (infos.length == 0) {
+            infos = AudioSystem.getSourceLineInfo(wanted);
+        }
+
+        List<AudioFormat> formats = new ArrayList<>();
+        for (Line.Info info : infos) {
+            if (!(info instanceof DataLine.Info)) continue;
+            for (AudioFormat f : ((DataLine.Info) info).getFormats()) {
+                if (f.getEncoding() == AudioFormat.Encoding.PCM_SIGNED) formats.add(f);
+            }
+        }
+        System.out.println("[OutputFormatNegotiator] Device offers " + formats.size() + " PCM formats");
+        return formats;
+    }
+
+    private static AudioFormat pcm(float rate, int bits, int channels) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, bits, channels,
+                channels * bits / 8, rate, false);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * OverlapAddStretch - Shared plumbing for the pitch-preserving engines.
+ *
+ * Subclasses produce one synthesis hop of output at a time from the source around
+ * an analysis position; this class hands hops out in whatever block size the
+ * player asks for, advances the analysis position by hop * tempo after each hop
+ * (so a tempo change applies from the next hop) and tracks which source frame is
+ * being output.
+ */
+public abstract class OverlapAddStretch implements TimeStretchEngine {
+    
+    static final double MIN_TEMPO = 0.25;
+    static final double MAX_TEMPO = 4.0;
+    
+    protected int channels = 1;
+    protected float sampleRate = 44100f;
+    protected int hop;          // output frames per produced hop (set by allocate)
+    protected short[] hopOut;   // hop * channels, written by produceHop
+    
+    private int hopRead = 0;
+    private int hopLength = 0;
+    private double analysisFrame = 0;
+    private double hopSourceStart = 0;
+    private double hopTempo = 1.0;
+    private boolean ended = false;
+    
+    @Override
+    public void prepare(int channels, float sampleRate) {
+        this.channels = Math.max(1, channels);
+        this.sampleRate = sampleRate;
+        allocate(this.channels, sampleRate);
+        hopOut = new short[hop * this.channels];
+        reset(0);
+    }
+    
+    @Override
+    public void reset(double sourceFrame) {
+        analysisFrame = sourceFrame;
+        hopSourceStart = sourceFrame;
+        hopRead = 0;
+        hopLength = 0;
+        ended = false;
+        clearState();
+    }
+    
+    @Override
+    public int render(PcmSource source, short[] out, int frames, double tempo) {
+        double t = Math.max(MIN_TEMPO, Math.min(tempo, MAX_TEMPO));
+        int done = 0;
+        while (done < frames) {
+            if (hopRead == hopLength) {
+                if (ended) break;
+                hopSourceStart = analysisFrame;
+                hopTempo = t;
+                if (!produceHop(source, analysisFrame, t)) {
+                    ended = true;
+                    break;
+                }
+                analysisFrame += hop * t;
+                hopRead = 0;
+                hopLength = hop;
+            }
+            int n = Math.min(frames - done, hopLength - hopRead);
+            System.arraycopy(hopOut, hopRead * channels, out, done * channels, n * channels);
+            hopRead += n;
+            done += n;
+        }
+        return done;
+    }
+    
+    @Override
+    public double getSourceFrame() {
+        return hopSourceStart + hopRead * hopTempo;
+    }
+    
+    /**
+     * Read count frames starting at frame into dst, zero-filling before the song
+     * start and past its end. Returns the number of real frames read.
+     */
+    protected int readSegment(PcmSource source, long frame, short[] dst, int count) {
+        int lead = (int) Math.max(0, Math.min(count, -frame));
+        java.util.Arrays.fill(dst, 0, lead * channels, (short) 0);
+        int got = 0;
+        while (lead + got < count) {
+            int n = source.read(frame + lead + got, dst, (lead + got) * channels, count - lead - got);
+            if (n <= 0) break;
+            got += n;
+        }
+        java.util.Arrays.fill(dst, (lead + got) * channels, count * channels, (short) 0);
+        return got;
+    }
+    
+    protected static short clip(double v) {
+        long r = Math.round(v);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, r));
+    }
+    
+    /**
+     * Set hop and allocate every buffer the engine needs
+     */
+    protected abstract void allocate(int channels, float sampleRate);
+    
+    /**
+     * Clear overlap buffers and phase history (buffers are kept)
+     */
+    protected abstract void clearState();
+    
+    /**
+     * Write the next hop frames into hopOut using the source around analysisFrame.
+     * 
+     * @return false once analysisFrame is past the end of the song
+     */
+    protected abstract boolean produceHop(PcmSource source, double analysisFrame, double tempo);
+}
@@ -0,0 +1,35 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * PcmSource - Random-access supply of interleaved 16-bit PCM frames for the player.
+ * Implementations may hold the whole song (DecodedAudio) or decode it on the fly.
+ */
+public interface PcmSource {
+    
+    /**
+     * Format of the frames returned by read() (16-bit signed little-endian PCM)
+     */
+    AudioFormat getFormat();
+    
+    /**
+     * Song length in frames, or -1 if not known up front
+     */
+    long getFrameLength();
+    
+    /**
+     * Copy up to frames frames starting at song frame into dst (interleaved samples).
+     * May block briefly while the frames are produced.
+     * 
+     * @return number of frames copied, 0 once the song has ended
+     */
+    int read(long frame, short[] dst, int offset, int frames);
+    
+    /**
+     * Release files and threads held by the source
+     */
+    void close();
+    
+    default int getChannels() {
+        return Math.max(1, getFormat().getChannels());
+    }
+}
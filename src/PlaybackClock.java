@@ -0,0 +1,163 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * PlaybackClock - Maps the audio line's frame position back to the song.
+ *
+ * The playback thread records, after every write, the line frame and source frame
+ * at the end of the block it wrote. A reader passes in the line's current frame
+ * position (the frame leaving the speakers) and gets the song frame it came from by
+ * interpolating inside the block that holds it, so tempo changes and ramps between
+ * blocks are accounted for exactly rather than estimated from the current tempo.
+ *
+ * Readers never block: they read optimistically (StampedLock) and retry if the
+ * playback thread recorded a block in the meantime.
+ */
+public class PlaybackClock {
+
+    private static final int HISTORY = 1024; // blocks remembered; must cover what the line buffers
+    private static final int MASK = HISTORY - 1;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Guarded by lock; written by the playback thread only
+    private final long[] lineEnd = new long[HISTORY];       // line frame after each block
+    private final double[] sourceEnd = new double[HISTORY]; // source frame after each block
+    private int head = 0;             // next slot to write
+    private int count = 0;            // blocks held
+    private long originLine = 0;      // where the oldest block held starts
+    private double originSource = 0;
+    private long songStartLine = 0;   // line frame at which the song started
+    private float sampleRate = 44100f;
+
+    /**
+     * A song starts (or restarts) playing at sourceFrame from the line's lineFrame
+     */
+    public void reset(long lineFrame, double sourceFrame, float sampleRate) {
+        long stamp = lock.writeLock();
+        try {
+            head = 0;
+            count = 0;
+            originLine = lineFrame;
+            originSource = sourceFrame;
+            songStartLine = lineFrame;
+            this.sampleRate = sampleRate;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Playback continues at sourceFrame from lineFrame (after a pause flushed the line);
+     * unlike reset() the song's output time keeps counting from where it was
+     */
+    public void rebase(long lineFrame, double sourceFrame) {
+        long stamp = lock.writeLock();
+        try {
+            head = 0;
+            count = 0;
+            originLine = lineFrame;
+            originSource = sourceFrame;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * A block was written: the line will reach lineFrame when source frame sourceFrame is due
+     */
+    public void record(long lineFrame, double sourceFrame) {
+        long stamp = lock.writeLock();
+        try {
+            if (count == HISTORY) {
+                // Oldest block drops out; where it ended is where the history now starts
+                int oldest = head;
+                originLine = lineEnd[oldest];
+                originSource = sourceEnd[oldest];
+                count--;
+            }
+            lineEnd[head] = lineFrame;
+            sourceEnd[head] = sourceFrame;
+            head = (head + 1) & MASK;
+            count++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Song position in nanoseconds of the frame the line is at
+     */
+    public long songTimeNanos(long linePosition) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                double frame = sourceFrameAt(linePosition);
+                float rate = sampleRate;
+                if (lock.validate(stamp)) {
+                    return (long) (Math.max(0.0, frame) / rate * 1e9);
+                }
+            }
+            Thread.onSpinWait(); // a block is being recorded; that takes a few stores
+        }
+    }
+
+    /**
+     * Source frame (fractional) of the frame the line is at
+     */
+    public double sourceFrame(long linePosition) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                double frame = sourceFrameAt(linePosition);
+                if (lock.validate(stamp)) {
+                    return frame;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Audio played out since the song started, in nanoseconds (wall time of the output, not song time)
+     */
+    public long outputTimeNanos(long linePosition) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                long frames = linePosition - songStartLine;
+                float rate = sampleRate;
+                if (lock.validate(stamp)) {
+                    return (long) (Math.max(0, frames) / (double) rate * 1e9);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Interpolated source frame for a line frame. May see a half-written state when
+     * called optimistically, so it only has to avoid throwing, not be right then.
+     */
+    private double sourceFrameAt(long linePosition) {
+        int n = Math.min(count, HISTORY);
+        int first = (head - n) & MASK;
+        if (n == 0 || linePosition <= originLine) return originSource;
+
+        int newest = (head - 1) & MASK;
+        if (linePosition >= lineEnd[newest]) return sourceEnd[newest]; // line has caught up (underrun or paused)
+
+        // First block ending at or after the line position
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lineEnd[(first + mid) & MASK] >= linePosition) hi = mid;
+            else lo = mid + 1;
+        }
+        int block = (first + lo) & MASK;
+        long startLine = lo == 0 ? originLine : lineEnd[(block - 1) & MASK];
+        double startSource = lo == 0 ? originSource : sourceEnd[(block - 1) & MASK];
+        long length = lineEnd[block] - startLine;
+        if (length <= 0) return sourceEnd[block];
+        return startSource + (sourceEnd[block] - startSource) * (linePosition - startLine) / length;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * PrerenderedStretch - Plays pre-rendered tempo variants, stretching live only in between.
+ *
+ * When the song is a TempoVariantSource and the tempo sits exactly on one of its
+ * variants, blocks are copied out of the variant (a memory-mapped file rendered
+ * offline by TempoVariantRenderer) and the live engine does nothing. While a tempo
+ * ramp is gliding between steps, or for songs without variants, the live engine
+ * renders as usual. The two are kept at the same song position, and each switch
+ * cross-fades over SWITCH_MS so it does not click.
+ */
+public class PrerenderedStretch implements TimeStretchEngine {
+
+    public static final String PREFIX = "prerendered:";
+    private static final double SWITCH_MS = 10.0;
+
+    private final TimeStretchEngine live;
+
+    private int channels = 1;
+    private short[] switchBuffer = new short[0];  // the side being left, for the cross-fade
+    private PcmSource playing;                    // variant being read, null while stretching live
+    private double playingTempo;
+    private long variantFrame;                    // next frame of the variant
+
+    public PrerenderedStretch(TimeStretchEngine live) {
+        if (live == null) throw new IllegalArgumentException("Live engine cannot be null");
+        this.live = live;
+    }
+
+    /**
+     * Engine used between pre-rendered tempos
+     */
+    public TimeStretchEngine getLiveEngine() {
+        return live;
+    }
+
+    @Override
+    public void prepare(int channels, float sampleRate) {
+        live.prepare(channels, sampleRate);
+        this.channels = Math.max(1, channels);
+        switchBuffer = new short[Math.max(1, (int) (sampleRate * SWITCH_MS / 1000)) * this.channels];
+        playing = null;
+    }
+
+    @Override
+    public void reset(double sourceFrame) {
+        live.reset(sourceFrame);
+        playing = null;
+    }
+
+    @Override
+    public int render(PcmSource source, short[] out, int frames, double tempo) {
+        PcmSource variant = source instanceof TempoVariantSource
+                ? ((TempoVariantSource) source).variantFor(tempo) : null;
+        int fadeFrames = Math.min(frames, switchBuffer.length / channels);
+
+        if (variant == null) {
+            if (playing == null) {
+                return live.render(source, out, frames, tempo);
+            }
+            // Leaving a variant: finish on it while the live engine takes over from the same spot
+            int leaving = readVariant(playing, switchBuffer, fadeFrames);
+            live.reset((variantFrame - leaving) * playingTempo);
+            playing = null;
+            int n = live.render(source, out, frames, tempo);
+            crossfade(out, Math.min(n, leaving));
+            return n;
+        }
+
+        if (variant != playing) {
+            // Joining a variant (or moving to another one) at the song position reached so far
+            int leaving = playing != null
+                    ? readVariant(playing, switchBuffer, fadeFrames)
+                    : live.render(source, switchBuffer, fadeFrames, tempo);
+            double from = playing != null ? (variantFrame - leaving) * playingTempo : live.getSourceFrame();
+            if (playing == null) from -= leaving * tempo;
+            playing = variant;
+            playingTempo = tempo;
+            variantFrame = Math.max(0, Math.round(from / tempo));
+            int n = readVariant(variant, out, frames);
+            crossfade(out, Math.min(n, leaving));
+            return n;
+        }
+
+        return readVariant(variant, out, frames);
+    }
+
+    /**
+     * Copy frames from the variant being played, advancing through it
+     */
+    private int readVariant(PcmSource variant, short[] dst, int frames) {
+        int done = 0;
+        while (done < frames) {
+            int n = variant.read(variantFrame, dst, done * channels, frames - done);
+            if (n <= 0) break;
+            variantFrame += n;
+            done += n;
+        }
+        return done;
+    }
+
+    /**
+     * Fade from switchBuffer (the side being left) into out over the first frames frames
+     */
+    private void crossfade(short[] out, int frames) {
+        for (int f = 0; f < frames; f++) {
+            float in = (f + 1) / (float) (frames + 1);
+            for (int c = 0; c < channels; c++) {
+                int i = f * channels + c;
+                out[i] = (short) Math.round(switchBuffer[i] * (1 - in) + out[i] * in);
+            }
+        }
+    }
+
+    @Override
+    public double getSourceFrame() {
+        return playing != null ? variantFrame * playingTempo : live.getSourceFrame();
+    }
+
+    @Override
+    public String getName() {
+        return PREFIX + live.getName();
+    }
+}
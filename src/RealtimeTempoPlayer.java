@@ -1,31 +1,115 @@
 import javax.sound.sampled.*;
-import java.io.*;
+import java.io.File;
 
 /**
  * Real-time tempo-changing music player (no external libraries)
- * Uses simple linear interpolation for tempo changes
- * 
- * NOTE: This is a basic implementation. Production quality needs:
- * - Phase vocoder or advanced time-stretching
- * - Anti-aliasing filters
- * - Proper buffering and threading
+ * Tempo changes go through a TimeStretchEngine: WSOLA by default, which keeps
+ * the pitch; plain varispeed resampling (pitch follows tempo) is still available.
+ *
+ * One render thread and one open output line live for as long as the player:
+ * play() hands the thread a new song, which it swaps in between two blocks
+ * (optionally crossfading from the old one), and stop() just silences the line.
+ * Lines are only reopened when the format changes, and then come from a pool.
  */
-public class RealtimeTempoPlayer implements MusicPlayer, Runnable {
+public class RealtimeTempoPlayer implements MusicPlayer, SongClock, Runnable {
     
     private final String[] playlist;
-    private volatile double tempoFactor = 1.0;
+    private volatile double tempoFactor = 1.0;  // tempo being rendered now (moves during a ramp)
     private volatile boolean isPlaying = false;
     private volatile boolean isPaused = false;
-    private volatile boolean shouldStop = false;
     
     private Thread playbackThread;
-    private SourceDataLine audioLine;
-    private short[] audioSamples;
-    private AudioFormat audioFormat;
+    private volatile SourceDataLine audioLine;
+    private volatile AudioFormat audioFormat;
     private int currentSongIndex = -1;
+    private PcmSource loadedSource; // for loadAudioFile / startPlayback
     
-    // Playback state
-    private double playbackPosition = 0.0;  // fractional sample position
+    // Playback thread state: current song and the line it plays on
+    private PcmSource source;
+    private LatencyMode lineMode = LatencyMode.DEFAULT;
+    private boolean lineStarted = false;
+    private int lineFrames;
+    private byte[] buffer = new byte[0];
+    private short[] processedSamples = new short[0];
+    private final AudioLinePool linePool = new AudioLinePool();
+    
+    // Tempo ramp requested by setTempo(target, rampMs) (guarded by this), picked up by the playback thread
+    private static final int RAMP_BLOCK_FRAMES = 64; // tempo is updated this often while ramping
+    private double rampTarget = 1.0;
+    private long rampMillis = 0;
+    private volatile int rampRequests = 0;
+    
+    // Ramp in progress (playback thread only)
+    private int rampSeen = 0;
+    private double rampGoal = 1.0;
+    private double rampStep = 0.0;      // tempo change per output frame
+    private long rampFramesLeft = 0;
+    
+    // Music volume requested by setVolume(volume, rampMs) (guarded by this); faded per frame by the playback thread
+    private double volumeTarget = 1.0;
+    private long volumeMillis = 0;
+    private volatile int volumeRequests = 0;
+    private int volumeSeen = 0;
+    private double volume = 1.0;
+    private double volumeGoal = 1.0;
+    private double volumeStep = 0.0;    // volume change per output frame
+    private long volumeFramesLeft = 0;
+    
+    // Time stretching: owned by the playback thread; a requested change is picked up between blocks
+    private TimeStretchEngine stretch;
+    private TimeStretchEngine appliedStretch;   // the requested engine stretch came from
+    private TimeStretchEngine spareStretch;     // same kind, for the incoming song of a crossfade
+    private volatile TimeStretchEngine requestedStretch = new WsolaStretch();
+    
+    // Crossfade between songs (playback thread only, apart from the setting)
+    private volatile int crossfadeMs = 0;
+    private PcmSource outgoing;
+    private TimeStretchEngine outgoingStretch;
+    private short[] outgoingSamples = new short[0];
+    private long fadeFrames = 0;
+    private long fadeDone = 0;
+    
+    // Hit sounds layered over the music (triggered from any thread, mixed by the playback thread)
+    private final SfxMixer sfx = new SfxMixer();
+    
+    // Published after every line write so other threads can see what is being heard
+    private final PlaybackClock clock = new PlaybackClock();
+    private long writtenOutputFrames = 0;     // line frame after the last write (playback thread)
+    
+    // Songs decoded recently (for files that cannot be mapped), shared with the prefetcher
+    private volatile DecodedAudioCache audioCache = new DecodedAudioCache();
+    
+    // Decodes neighbouring levels ahead of time
+    private final LevelPrefetcher prefetcher = new LevelPrefetcher(audioCache);
+    
+    // Commands to the playback thread (guarded by swapLock); each request gets a number
+    // so the caller can wait until the thread has acted on it
+    private static final long SWAP_TIMEOUT_MS = 2000;  // first line open can be slow
+    private static final long STOP_TIMEOUT_MS = 200;
+    private final Object swapLock = new Object();
+    private PcmSource pendingSwap;
+    private boolean stopRequested = false;
+    private boolean pauseRequested = false;
+    private boolean closed = false;
+    private long requests = 0;
+    private long applied = 0;
+    private LineUnavailableException lineError;
+    
+    // Streaming: decode into a small ring while playing instead of loading whole songs
+    private volatile boolean streaming = false;
+    
+    // Songs pre-rendered at the difficulty tempos (TempoVariantRenderer), null = always stretch live
+    private volatile File prerenderedDir;
+    
+    // Output buffering; the mode the line was opened with is what the playback thread uses
+    private volatile LatencyMode latencyMode = LatencyMode.DEFAULT;
+    
+    // Output format: what the device plays natively; songs are converted to its rate here
+    private volatile OutputFormatNegotiator outputFormats = new OutputFormatNegotiator(0);
+    
+    // Underruns: the line ran dry while the playback thread was meant to be feeding it
+    private volatile long underruns = 0;
+    private boolean expectEmptyLine = true; // after start, pause or a swap the line is empty on purpose
     
     public RealtimeTempoPlayer(String[] playlist) {
         this.playlist = (playlist != null) ? playlist.clone() : new String[0];
@@ -41,178 +125,784 @@ public class RealtimeTempoPlayer implements MusicPlayer, Runnable {
             return;
         }
         
-        // Stop current playback
-        stop();
-        
+        long start = System.nanoTime();
         try {
+            // Plain PCM WAVs are mapped and read in place; anything else goes through AudioSystem
+            PcmSource audio = prefetcher.take(playlist[songIndex]);
+            if (audio == null) {
+                audio = MappedPcmSource.tryOpen(playlist[songIndex]);
+            }
+            if (audio == null) {
+                audio = streaming
+                        ? new StreamingPcmSource(playlist[songIndex])
+                        : audioCache.get(playlist[songIndex]);
+            }
+            audio = TempoVariantSource.open(prerenderedDir, playlist[songIndex], audio);
             currentSongIndex = songIndex;
-            loadAudioFile(playlist[songIndex]);
-            startPlayback();
+            
+            submit(audio);
+            System.out.printf("[RealtimeTempoPlayer] Song #%d playing after %.1f ms%n",
+                    songIndex, (System.nanoTime() - start) / 1e6);
         } catch (Exception e) {
             System.err.println("Error loading audio:");
             e.printStackTrace();
         }
+        
+        prefetcher.prefetchAround(playlist, songIndex, !streaming);
     }
     
     public void loadAudioFile(String filePath) throws Exception {
-        System.out.println("[Load] Loading: " + filePath);
-        
-        File file = new File(filePath);
-        AudioInputStream ais = AudioSystem.getAudioInputStream(file);
-        audioFormat = ais.getFormat();
-        
-        System.out.println("[Load] Format: " + audioFormat);
-        
-        // Convert to PCM if needed
-        if (audioFormat.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
-            AudioFormat pcmFormat = new AudioFormat(
-                AudioFormat.Encoding.PCM_SIGNED,
-                audioFormat.getSampleRate(), 16, audioFormat.getChannels(),
-                audioFormat.getChannels() * 2, audioFormat.getSampleRate(), false
-            );
-            ais = AudioSystem.getAudioInputStream(pcmFormat, ais);
-            audioFormat = pcmFormat;
+        // 16/24/32-bit and float WAVs are mapped as they are; anything else is decoded to 16-bit
+        PcmSource audio = MappedPcmSource.tryOpen(filePath);
+        loadedSource = audio != null ? audio : DecodedAudio.load(filePath);
+    }
+    
+    /**
+     * Play the song loaded with loadAudioFile()
+     */
+    public void startPlayback() throws LineUnavailableException {
+        PcmSource audio = loadedSource;
+        loadedSource = null;
+        if (audio == null) return;
+        try {
+            submit(audio);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
+    
+    /**
+     * Streaming mode: songs are decoded by a background thread into a fixed ring
+     * (StreamingPcmSource) rather than loaded whole. Applies from the next play().
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        System.out.println("[RealtimeTempoPlayer] Streaming " + (streaming ? "on" : "off"));
+    }
+    
+    public boolean isStreaming() {
+        return streaming;
+    }
+    
+    /**
+     * Replace the decoded-song cache (e.g. a different budget, or off-heap)
+     */
+    public void setAudioCache(DecodedAudioCache cache) {
+        if (cache == null) throw new IllegalArgumentException("Cache cannot be null");
+        this.audioCache = cache;
+        prefetcher.setCache(cache);
+    }
+    
+    public DecodedAudioCache getAudioCache() {
+        return audioCache;
+    }
+    
+    /**
+     * Choose the time-stretch engine ("wsola", "phasevocoder" or "resample").
+     * Takes effect on the next block, continuing from the current song position.
+     */
+    public void setStretchEngine(TimeStretchEngine engine) {
+        if (engine == null) throw new IllegalArgumentException("Engine cannot be null");
+        requestedStretch = engine;
+        System.out.println("[RealtimeTempoPlayer] Time stretch: " + engine.getName());
+    }
+    
+    public TimeStretchEngine getStretchEngine() {
+        return requestedStretch;
+    }
+    
+    /**
+     * Play the tempo variants TempoVariantRenderer wrote to dir instead of stretching
+     * live whenever the tempo sits on a difficulty step (null = always stretch live).
+     * Wraps the current engine, which still renders tempo ramps. Applies from the next play().
+     */
+    public void setPrerenderedDir(File dir) {
+        prerenderedDir = dir;
+        TimeStretchEngine engine = requestedStretch;
+        if (dir != null && !(engine instanceof PrerenderedStretch)) {
+            setStretchEngine(new PrerenderedStretch(engine));
+        } else if (dir == null && engine instanceof PrerenderedStretch) {
+            setStretchEngine(((PrerenderedStretch) engine).getLiveEngine());
+        }
+        System.out.println("[RealtimeTempoPlayer] Pre-rendered tempos " + (dir != null ? "from " + dir : "off"));
+    }
+    
+    public File getPrerenderedDir() {
+        return prerenderedDir;
+    }
+    
+    /**
+     * The output device's native sample rate, if known (e.g. 48000 under PipeWire), so
+     * songs are converted here rather than by the system mixer. 0 = take the rates the
+     * mixer lists, or play songs at their own rate. Applies from the next play().
+     */
+    public void setDeviceSampleRate(float rate) {
+        outputFormats = new OutputFormatNegotiator(rate);
+        System.out.println("[RealtimeTempoPlayer] Device rate " + (rate > 0 ? rate + " Hz" : "auto"));
+    }
+    
+    public float getDeviceSampleRate() {
+        return outputFormats.getDeviceRate();
+    }
+    
+    /**
+     * Line buffer, block and prefill sizes. Applies when the next song starts
+     * (the line is exchanged for one with the new buffer size).
+     */
+    public void setLatencyMode(LatencyMode mode) {
+        if (mode == null) throw new IllegalArgumentException("Latency mode cannot be null");
+        latencyMode = mode;
+        System.out.println("[RealtimeTempoPlayer] Latency mode: " + mode);
+    }
+    
+    public LatencyMode getLatencyMode() {
+        return latencyMode;
+    }
+    
+    /**
+     * Crossfade length when a song replaces a playing one (0 = cut straight over).
+     * With a crossfade the old song plays out what is already queued in the line
+     * and fades under the new one, so the new song starts one line buffer later.
+     */
+    public void setCrossfadeMs(int ms) {
+        crossfadeMs = Math.max(0, ms);
+        System.out.println("[RealtimeTempoPlayer] Crossfade " + crossfadeMs + " ms");
+    }
+    
+    public int getCrossfadeMs() {
+        return crossfadeMs;
+    }
+    
+    /**
+     * Times the line ran out of audio while playing (since this player was created)
+     */
+    public long getUnderrunCount() {
+        return underruns;
+    }
+    
+    /**
+     * Audio queued in the line when it is full, in milliseconds (0 if no line is open)
+     */
+    public double getOutputBufferMs() {
+        SourceDataLine line = audioLine;
+        if (line == null) return 0;
+        return line.getBufferSize() / (double) line.getFormat().getFrameSize()
+                / line.getFormat().getSampleRate() * 1000.0;
+    }
+    
+    /**
+     * Hit/miss/combo sounds mixed into this player's output (register it with the BeatJudge)
+     */
+    public SfxMixer getSfxMixer() {
+        return sfx;
+    }
+
+    // ===== Commands to the playback thread =====
+    
+    /**
+     * Hand a song to the playback thread and wait until it is playing
+     */
+    private void submit(PcmSource audio) throws InterruptedException, LineUnavailableException {
+        synchronized (swapLock) {
+            if (pendingSwap != null) {
+                pendingSwap.close(); // superseded before it was played
+            }
+            pendingSwap = audio;
+            isPaused = false;
+            long request = ++requests;
+            ensurePlaybackThread();
+            swapLock.notifyAll();
+            
+            awaitApplied(request, SWAP_TIMEOUT_MS);
+            if (lineError != null) {
+                LineUnavailableException e = lineError;
+                lineError = null;
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Wait (holding swapLock) until the playback thread has handled a request, or time out
+     */
+    private void awaitApplied(long request, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (applied < request) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                System.err.println("[Playback] Playback thread is slow to respond; carrying on");
+                return;
+            }
+            swapLock.wait(left);
+        }
+    }
+    
+    private void ensurePlaybackThread() {
+        Thread t = playbackThread;
+        if (t != null && t.isAlive()) return;
+        closed = false;
+        playbackThread = new Thread(this, "AudioRenderThread");
+        playbackThread.setDaemon(true);
+        playbackThread.setPriority(Thread.MAX_PRIORITY);
+        playbackThread.start();
+    }
+    
+    // ===== Playback thread =====
+    
+    @Override
+    public void run() {
+        System.out.println("[Playback] Render thread started");
+        try {
+            while (true) {
+                PcmSource next;
+                boolean stopNow;
+                boolean pauseNow;
+                long request;
+                synchronized (swapLock) {
+                    // Idle (no song, or paused) until there is something to do; parked, no polling
+                    while (!closed && pendingSwap == null && !stopRequested && !pauseRequested
+                            && (source == null || isPaused)) {
+                        if (source != null) expectEmptyLine = true;
+                        swapLock.wait();
+                    }
+                    if (closed) break;
+                    next = pendingSwap;
+                    pendingSwap = null;
+                    stopNow = stopRequested;
+                    stopRequested = false;
+                    pauseNow = pauseRequested;
+                    pauseRequested = false;
+                    request = requests;
+                }
+                
+                if (stopNow || pauseNow || next != null) {
+                    if (stopNow) stopSong();
+                    if (pauseNow) pauseSong();
+                    if (next != null) startSong(next);
+                    synchronized (swapLock) {
+                        applied = Math.max(applied, request);
+                        swapLock.notifyAll();
+                    }
+                    continue;
+                }
+                
+                applyStretchChange();
+                renderBlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopSong();
+            linePool.release(audioLine, lineMode.getBufferFrames());
+            audioLine = null;
+            linePool.close();
+            System.out.println("[Playback] Render thread stopped");
+        }
+    }
+    
+    /**
+     * Start a song: into the open line if the format allows (crossfading if set),
+     * otherwise on a line for its format
+     */
+    private void startSong(PcmSource next) {
+        AudioFormat format = outputFormats.negotiate(next.getFormat());
+        next = ResampledPcmSource.toRate(next, format.getSampleRate());
+        SourceDataLine line = audioLine;
+        boolean sameLine = line != null && audioFormat.matches(format) && lineMode == latencyMode;
         
-        // Read all audio data
-        byte[] audioBytes = ais.readAllBytes();
-        ais.close();
-        
-        // Convert to samples (assuming 16-bit)
-        int numSamples = audioBytes.length / 2;
-        audioSamples = new short[numSamples];
+        if (sameLine && source != null && isPlaying && crossfadeMs > 0) {
+            beginCrossfade(next);
+            System.out.println("[Playback] Crossfading into song #" + currentSongIndex);
+            return;
+        }
         
-        for (int i = 0; i < numSamples; i++) {
-            int idx = i * 2;
-            audioSamples[i] = (short) ((audioBytes[idx + 1] << 8) | (audioBytes[idx] & 0xFF));
+        endCrossfade();
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+        if (sameLine) {
+            line.flush();
+        } else {
+            try {
+                switchLine(format);
+            } catch (LineUnavailableException e) {
+                System.err.println("[Playback] No output line for " + format + ": " + e.getMessage());
+                next.close();
+                isPlaying = false;
+                synchronized (swapLock) {
+                    lineError = e;
+                }
+                return;
+            }
         }
         
-        System.out.println("[Load] Loaded " + audioSamples.length + " samples");
+        stretch.reset(0);
+        source = next;
+        writtenOutputFrames = audioLine.getLongFramePosition();
+        clock.reset(writtenOutputFrames, 0.0, format.getSampleRate());
+        expectEmptyLine = true;
+        isPlaying = true;
+        System.out.println("[Playback] " + (sameLine ? "Swapped in" : "Started") + " song #" + currentSongIndex);
     }
     
-    public void startPlayback() throws LineUnavailableException {
-        DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
-        audioLine = (SourceDataLine) AudioSystem.getLine(info);
-        audioLine.open(audioFormat);
-        audioLine.start();
+    /**
+     * Give the current line back to the pool and take one for a new format or latency mode
+     */
+    private void switchLine(AudioFormat format) throws LineUnavailableException {
+        linePool.release(audioLine, lineMode.getBufferFrames());
+        audioLine = null;
+        lineStarted = false;
         
-        playbackPosition = 0.0;
-        isPlaying = true;
-        isPaused = false;
-        shouldStop = false;
+        LatencyMode mode = latencyMode;
+        SourceDataLine line = linePool.acquire(format, mode.getBufferFrames());
+        lineMode = mode;
+        audioFormat = format;
+        lineFrames = line.getBufferSize() / format.getFrameSize();
         
-        playbackThread = new Thread(this);
-        playbackThread.start();
+        int channels = Math.max(1, format.getChannels());
+        buffer = new byte[mode.getBlockFrames() * format.getFrameSize()];
+        processedSamples = new short[mode.getBlockFrames() * channels];
+        outgoingSamples = new short[mode.getBlockFrames() * channels];
         
-        System.out.println("[Playback] Started");
+        if (stretch == null) {
+            stretch = requestedStretch;
+            appliedStretch = stretch;
+        }
+        stretch.prepare(channels, format.getSampleRate());
+        sfx.prepare(channels, format.getSampleRate());
+        spareStretch = null;
+        audioLine = line;
+        System.out.printf("[Playback] Line buffer %.1f ms, %s%n", getOutputBufferMs(), lineMode);
     }
     
-    @Override
-    public void run() {
-        byte[] buffer = new byte[4096];
-        short[] processedSamples = new short[buffer.length / 2];
+    /**
+     * Silence the line and drop the song (the line stays open for the next one)
+     */
+    private void stopSong() {
+        endCrossfade();
+        sfx.clear();
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+        isPlaying = false;
+        SourceDataLine line = audioLine;
+        if (line != null) {
+            line.stop();
+            line.flush();
+            lineStarted = false;
+            writtenOutputFrames = line.getLongFramePosition();
+            clock.reset(writtenOutputFrames, 0.0, audioFormat.getSampleRate());
+        }
+    }
+    
+    /**
+     * Stop the line where it is and throw away what it still held, rewinding the
+     * stretch engine to the frame that was being heard. On resume the blocks are
+     * rendered again from there and prefilled before the line restarts.
+     */
+    private void pauseSong() {
+        SourceDataLine line = audioLine;
+        if (source == null || line == null) return;
         
-        while (isPlaying && !shouldStop) {
-            if (isPaused) {
-                try { Thread.sleep(10); } catch (InterruptedException e) {}
-                continue;
-            }
-            
-            // Process audio with current tempo
-            int samplesGenerated = generateSamples(processedSamples, tempoFactor);
-            
-            if (samplesGenerated == 0) {
-                // End of song
-                isPlaying = false;
-                break;
-            }
-            
-            // Convert to bytes and write to audio line
-            for (int i = 0; i < samplesGenerated; i++) {
+        line.stop();
+        double heard = clock.sourceFrame(line.getLongFramePosition());
+        line.flush();
+        lineStarted = false;
+        
+        endCrossfade();
+        sfx.clear();
+        stretch.reset(heard);
+        writtenOutputFrames = line.getLongFramePosition();
+        clock.rebase(writtenOutputFrames, heard);
+        System.out.printf("[Playback] Paused at %.3f s%n", heard / audioFormat.getSampleRate());
+    }
+    
+    /**
+     * Pack rendered samples into buffer in the line's sample size (16, 24 or 32 bit,
+     * little-endian as negotiated); returns the byte count
+     */
+    private int toLineBytes(int samples) {
+        int bytes = audioFormat.getSampleSizeInBits() / 8;
+        if (bytes == 2) {
+            for (int i = 0; i < samples; i++) {
                 buffer[i * 2] = (byte) (processedSamples[i] & 0xFF);
                 buffer[i * 2 + 1] = (byte) ((processedSamples[i] >> 8) & 0xFF);
             }
-            
-            audioLine.write(buffer, 0, samplesGenerated * 2);
+            return samples * 2;
+        }
+        // Wider samples: the 16 bits go on top, the extra low bytes are zero
+        for (int i = 0; i < samples; i++) {
+            int b = i * bytes;
+            for (int k = 0; k < bytes - 2; k++) {
+                buffer[b + k] = 0;
+            }
+            buffer[b + bytes - 2] = (byte) (processedSamples[i] & 0xFF);
+            buffer[b + bytes - 1] = (byte) ((processedSamples[i] >> 8) & 0xFF);
         }
+        return samples * bytes;
+    }
+    
+    /**
+     * Render one block of the song (mixed with the outgoing song during a crossfade) and queue it
+     */
+    private void renderBlock() {
+        SourceDataLine line = audioLine;
+        int channels = Math.max(1, audioFormat.getChannels());
+        int blockFrames = lineMode.getBlockFrames();
         
-        audioLine.drain();
-        audioLine.stop();
-        audioLine.close();
-        System.out.println("[Playback] Stopped");
+        // Process audio with current tempo; while ramping, in short blocks so the tempo glides
+        pollTempoRamp();
+        int frames = rampFramesLeft > 0 ? Math.min(RAMP_BLOCK_FRAMES, blockFrames) : blockFrames;
+        double tempo = advanceTempoRamp(frames);
+        int framesGenerated = stretch.render(source, processedSamples, frames, tempo);
+        if (outgoing != null) {
+            framesGenerated = mixCrossfade(frames, framesGenerated, tempo, channels);
+        }
+        
+        if (framesGenerated == 0) {
+            finishSong(line);
+            return;
+        }
+        if (lineStarted) {
+            checkUnderrun(line);
+        }
+        applyVolume(framesGenerated, channels);
+        sfx.mix(processedSamples, framesGenerated);
+        
+        // Convert to bytes and write to audio line
+        int samplesGenerated = framesGenerated * channels;
+        int bytesWritten = toLineBytes(samplesGenerated);
+        line.write(buffer, 0, bytesWritten);
+        writtenOutputFrames += framesGenerated;
+        clock.record(writtenOutputFrames, stretch.getSourceFrame());
+        expectEmptyLine = false;
+        
+        // Never wait for more than the line can hold, or write() would block forever
+        long queued = writtenOutputFrames - line.getLongFramePosition();
+        if (!lineStarted && queued >= Math.min(lineMode.getPrefillFrames(), lineFrames - blockFrames)) {
+            line.start();
+            lineStarted = true;
+        }
+    }
+    
+    /**
+     * The song ended by itself: let it ring out, then wait for the next one
+     */
+    private void finishSong(SourceDataLine line) {
+        line.start(); // a song shorter than the prefill was never started
+        line.drain();
+        line.stop();
+        lineStarted = false;
+        
+        endCrossfade();
+        source.close();
+        source = null;
+        isPlaying = false;
+        System.out.println("[Playback] Song finished");
     }
     
     /**
-     * Generate samples with tempo scaling using linear interpolation
-     * (Simple but introduces some artifacts - good enough for demo)
+     * Keep rendering the old song with its engine and fade it out under the new one
      */
-    private int generateSamples(short[] output, double tempo) {
-        int samplesNeeded = output.length;
-        int samplesGenerated = 0;
+    private void beginCrossfade(PcmSource next) {
+        endCrossfade();
+        outgoing = source;
+        outgoingStretch = stretch;
         
-        // Step size in source audio based on tempo
-        // tempo = 2.0 means we move twice as fast through source
-        double step = tempo;
+        TimeStretchEngine incoming = spareStretch != null ? spareStretch : TimeStretchEngine.create(stretch.getName());
+        incoming.prepare(audioFormat.getChannels(), audioFormat.getSampleRate());
+        incoming.reset(0);
+        stretch = incoming;
+        spareStretch = null;
+        source = next;
         
-        while (samplesGenerated < samplesNeeded) {
-            int pos = (int) playbackPosition;
-            
-            // Check if we've reached the end
-            if (pos >= audioSamples.length - 1) {
-                break;
+        fadeFrames = Math.max(1, (long) (crossfadeMs * audioFormat.getSampleRate() / 1000));
+        fadeDone = 0;
+        // The new song is heard once the line has played what is already queued
+        clock.reset(writtenOutputFrames, 0.0, audioFormat.getSampleRate());
+    }
+    
+    /**
+     * Equal-power mix of the incoming block (in processedSamples) with the outgoing song
+     *
+     * @return frames in the mixed block
+     */
+    private int mixCrossfade(int frames, int incomingFrames, double tempo, int channels) {
+        int outgoingFrames = outgoingStretch.render(outgoing, outgoingSamples, frames, tempo);
+        int mixed = Math.max(incomingFrames, outgoingFrames);
+        for (int f = 0; f < mixed; f++) {
+            double g = Math.min(1.0, (fadeDone + f) / (double) fadeFrames) * Math.PI / 2;
+            double in = Math.sin(g);
+            double out = Math.cos(g);
+            for (int c = 0; c < channels; c++) {
+                int i = f * channels + c;
+                double a = f < incomingFrames ? processedSamples[i] : 0;
+                double b = f < outgoingFrames ? outgoingSamples[i] : 0;
+                long v = Math.round(a * in + b * out);
+                processedSamples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
             }
-            
-            // Linear interpolation between samples
-            double frac = playbackPosition - pos;
-            short sample1 = audioSamples[pos];
-            short sample2 = audioSamples[pos + 1];
-            
-            output[samplesGenerated] = (short) (sample1 + frac * (sample2 - sample1));
-            
-            playbackPosition += step;
-            samplesGenerated++;
         }
+        fadeDone += mixed;
+        if (fadeDone >= fadeFrames || outgoingFrames == 0) {
+            endCrossfade();
+        }
+        return mixed;
+    }
+    
+    private void endCrossfade() {
+        if (outgoing == null) return;
+        outgoing.close();
+        outgoing = null;
+        spareStretch = outgoingStretch; // same kind as stretch, reused for the next crossfade
+        outgoingStretch = null;
+    }
+    
+    /**
+     * Before a write: if the line has played everything it was given, the speakers
+     * went silent waiting for us. Not counted when the line was emptied on purpose.
+     */
+    private void checkUnderrun(SourceDataLine line) {
+        if (expectEmptyLine) return;
+        boolean empty = line.available() >= lineFrames * audioFormat.getFrameSize()
+                || line.getLongFramePosition() >= writtenOutputFrames;
+        if (empty) {
+            long n = ++underruns;
+            System.err.println("[Playback] Underrun #" + n + " (render thread fell behind the "
+                    + lineMode.getName() + " buffer)");
+        }
+    }
+    
+    /**
+     * Start a newly requested ramp from wherever the tempo is now
+     */
+    private void pollTempoRamp() {
+        if (rampRequests == rampSeen) return;
+        double target;
+        long millis;
+        synchronized (this) {
+            rampSeen = rampRequests;
+            target = rampTarget;
+            millis = rampMillis;
+        }
+        long frames = (long) (millis * audioFormat.getSampleRate() / 1000);
+        if (frames <= 0) {
+            tempoFactor = target;
+            rampFramesLeft = 0;
+        } else {
+            rampGoal = target;
+            rampStep = (target - tempoFactor) / frames;
+            rampFramesLeft = frames;
+        }
+    }
+    
+    /**
+     * Tempo to render the next frames at (the ramp's value at their middle), then move the ramp past them
+     */
+    private double advanceTempoRamp(int frames) {
+        if (rampFramesLeft <= 0) return tempoFactor;
+        long n = Math.min(frames, rampFramesLeft);
+        double mid = tempoFactor + rampStep * n / 2;
+        rampFramesLeft -= n;
+        tempoFactor = rampFramesLeft == 0 ? rampGoal : tempoFactor + rampStep * n;
+        return mid;
+    }
+    
+    /**
+     * Scale the music in processedSamples by the volume, moving along a requested fade
+     */
+    private void applyVolume(int frames, int channels) {
+        if (volumeRequests != volumeSeen) {
+            double target;
+            long millis;
+            synchronized (this) {
+                volumeSeen = volumeRequests;
+                target = volumeTarget;
+                millis = volumeMillis;
+            }
+            volumeGoal = target;
+            volumeFramesLeft = (long) (millis * audioFormat.getSampleRate() / 1000);
+            volumeStep = volumeFramesLeft > 0 ? (target - volume) / volumeFramesLeft : 0;
+            if (volumeFramesLeft == 0) volume = target;
+        }
+        if (volume == 1.0 && volumeFramesLeft == 0) return;
         
-        return samplesGenerated;
+        for (int f = 0; f < frames; f++) {
+            if (volumeFramesLeft > 0) {
+                volume += volumeStep;
+                if (--volumeFramesLeft == 0) volume = volumeGoal;
+            }
+            float gain = (float) volume;
+            for (int c = 0; c < channels; c++) {
+                int i = f * channels + c;
+                processedSamples[i] = (short) Math.round(processedSamples[i] * gain);
+            }
+        }
     }
     
+    /**
+     * Switch to a newly requested engine, carrying on from where the old one was
+     */
+    private void applyStretchChange() {
+        TimeStretchEngine requested = requestedStretch;
+        if (requested == appliedStretch) return;
+        double at = stretch.getSourceFrame();
+        requested.prepare(audioFormat.getChannels(), audioFormat.getSampleRate());
+        requested.reset(at);
+        stretch = requested;
+        appliedStretch = requested;
+        spareStretch = null;
+    }
+    
+    /**
+     * Stop the line and park the render thread until resume() (no CPU while paused)
+     */
     @Override
     public void pause() {
-        isPaused = true;
+        synchronized (swapLock) {
+            if (!isPlaying || isPaused) return;
+            isPaused = true;
+            pauseRequested = true;
+            long request = ++requests;
+            swapLock.notifyAll();
+            try {
+                awaitApplied(request, STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         System.out.println("[Playback] Paused");
     }
     
+    /**
+     * Wake the render thread; it prefills the line before starting it again
+     */
     @Override
     public void resume() {
-        isPaused = false;
+        synchronized (swapLock) {
+            isPaused = false;
+            swapLock.notifyAll();
+        }
         System.out.println("[Playback] Resumed");
     }
     
+    /**
+     * Silence playback and drop the song. The render thread and line stay up for the next play().
+     */
     @Override
     public void stop() {
-        shouldStop = true;
-        isPlaying = false;
-        
-        if (playbackThread != null) {
-            try {
-                playbackThread.join(1000);
-            } catch (InterruptedException e) {}
-        }
-        
-        if (audioLine != null) {
-            audioLine.stop();
-            audioLine.close();
-            audioLine = null;
+        synchronized (swapLock) {
+            Thread t = playbackThread;
+            if (pendingSwap != null) {
+                pendingSwap.close();
+                pendingSwap = null;
+            }
+            if (t != null && t.isAlive()) {
+                stopRequested = true;
+                long request = ++requests;
+                swapLock.notifyAll();
+                try {
+                    awaitApplied(request, STOP_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
-        
         System.out.println("[Playback] Stopped");
     }
     
+    /**
+     * Stop, end the render thread and close the output lines
+     */
+    public void close() {
+        Thread t;
+        synchronized (swapLock) {
+            closed = true;
+            swapLock.notifyAll();
+            t = playbackThread;
+        }
+        if (t != null) {
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        prefetcher.shutdown();
+        System.out.println("[RealtimeTempoPlayer] Closed");
+    }
+    
+    // ===== Position (MusicPlayer / SongClock) =====
+    
+    /**
+     * Song position of the frame currently leaving the speakers, in nanoseconds.
+     * Lock-free; the line's frame position is mapped back through the blocks written.
+     */
+    @Override
+    public long getSongTimeNanos() {
+        SourceDataLine line = audioLine;
+        if (line == null) return 0;
+        return clock.songTimeNanos(line.getLongFramePosition());
+    }
+    
+    /**
+     * Audio played out since the current song started, in nanoseconds.
+     * Runs at wall speed whatever the tempo; stands still while paused.
+     */
     @Override
-    public synchronized void setTempo(double factor) {
+    public long getOutputTimeNanos() {
+        SourceDataLine line = audioLine;
+        if (line == null) return 0;
+        return clock.outputTimeNanos(line.getLongFramePosition());
+    }
+    
+    @Override
+    public double getSongTimeSec() {
+        return getSongTimeNanos() / 1e9;
+    }
+    
+    @Override
+    public double getTempo() {
+        return tempoFactor;
+    }
+    
+    @Override
+    public boolean isAdvancing() {
+        return isPlaying && !isPaused;
+    }
+    
+    @Override
+    public void setTempo(double factor) {
+        setTempo(factor, 0);
+    }
+    
+    /**
+     * Fade the music (not the hit sounds) to volume 0..1 over rampMs of playback
+     */
+    @Override
+    public synchronized void setVolume(double volume, long rampMs) {
+        volumeTarget = Math.max(0.0, Math.min(volume, 1.0));
+        volumeMillis = Math.max(0, rampMs);
+        volumeRequests++;
+    }
+    
+    /**
+     * Glide linearly to a tempo over rampMs of playback. The playback thread does the
+     * ramp between blocks, so no other thread has to keep nudging the tempo.
+     */
+    @Override
+    public synchronized void setTempo(double factor, long rampMs) {
         double clamped = Math.max(-3, Math.min(factor, 2.0));
-        tempoFactor = clamped;
-        System.out.println("[Tempo] Set to " + String.format("%.2fx", tempoFactor));
+        rampTarget = clamped;
+        rampMillis = Math.max(0, rampMs);
+        rampRequests++;
+        
+        // Nothing is being rendered, so there is nothing to ramp
+        if (!isPlaying) {
+            tempoFactor = clamped;
+        }
+        System.out.println("[Tempo] Set to " + String.format("%.2fx", clamped)
+                + (rampMs > 0 ? " over " + rampMs + " ms" : ""));
     }
 }
-    
\ No newline at end of file
@@ -0,0 +1,92 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * ResampledPcmSource - A song presented at the output device's sample rate.
+ *
+ * Frame f of this source is source frame f * ratio, interpolated with the same
+ * windowed-sinc resampler ResamplingStretch uses for tempo (low-passed when the rate
+ * goes down). Reads are random access, so WSOLA's searches and seeks work unchanged,
+ * and the stretch engines and the song clock simply run at the device rate.
+ * ResamplingStretch recognises this source and reads the song underneath directly,
+ * so varispeed playback still resamples only once.
+ */
+public class ResampledPcmSource implements PcmSource {
+
+    private final PcmSource source;
+    private final AudioFormat format;
+    private final double ratio; // source frames per frame of this source
+
+    // Reads come from the render thread; the lock only guards against stray callers
+    private final ResamplingStretch resampler = new ResamplingStretch();
+    private short[] scratch = new short[0];
+
+    private ResampledPcmSource(PcmSource source, float rate) {
+        this.source = source;
+        AudioFormat in = source.getFormat();
+        int channels = source.getChannels();
+        this.format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels,
+                channels * 2, rate, false);
+        this.ratio = in.getSampleRate() / rate;
+        resampler.prepare(channels, rate);
+    }
+
+    /**
+     * The source at rate, or the source itself if it already is at that rate.
+     * Pre-rendered tempo variants are converted along with the song.
+     */
+    public static PcmSource toRate(PcmSource source, float rate) {
+        if (source.getFormat().getSampleRate() == rate) return source;
+        if (source instanceof TempoVariantSource) {
+            return ((TempoVariantSource) source).map(s -> toRate(s, rate));
+        }
+        System.out.println("[ResampledPcmSource] " + source.getFormat().getSampleRate() + " Hz -> " + rate + " Hz");
+        return new ResampledPcmSource(source, rate);
+    }
+
+    /**
+     * The song at its own rate
+     */
+    public PcmSource getSource() {
+        return source;
+    }
+
+    /**
+     * Source frames per output frame (song rate / device rate)
+     */
+    public double getRatio() {
+        return ratio;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getFrameLength() {
+        long length = source.getFrameLength();
+        return length < 0 ? -1 : (long) (length / ratio);
+    }
+
+    @Override
+    public synchronized int read(long frame, short[] dst, int offset, int frames) {
+        if (frame < 0) return 0;
+        int channels = format.getChannels();
+        if (offset == 0) {
+            resampler.reset(frame * ratio);
+            return resampler.render(source, dst, frames, ratio);
+        }
+        if (scratch.length < frames * channels) {
+            scratch = new short[frames * channels];
+        }
+        resampler.reset(frame * ratio);
+        int n = resampler.render(source, scratch, frames, ratio);
+        System.arraycopy(scratch, 0, dst, offset, n * channels);
+        return n;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+}
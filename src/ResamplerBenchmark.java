@@ -0,0 +1,123 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * ResamplerBenchmark - Quality and speed of the varispeed kernels.
+ *
+ * The test signal is a stereo mix of sines with different tones in each channel,
+ * so the exact answer at any fractional position can be computed. Each kernel is
+ * run at a few tempos and compared against that reference:
+ *  - SNR: reference power over error power, in the pass band
+ *  - crosstalk: how much of the other channel's tones leaks in (the old
+ *    sample-indexed interpolator mixed left and right)
+ *  - throughput: output frames per second, and share of one core at 44.1 kHz
+ *
+ * Usage: java ResamplerBenchmark [seconds]
+ */
+public class ResamplerBenchmark {
+
+    private static final float RATE = 44100f;
+    private static final double[] TEMPOS = {0.8, 1.0, 1.3};
+    private static final double[] LEFT_HZ = {440, 3100};
+    private static final double[] RIGHT_HZ = {1250, 5300};
+    private static final double AMPLITUDE = 8000;
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 10.0;
+        int frames = (int) (seconds * RATE);
+
+        short[] samples = new short[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            samples[2 * f] = (short) Math.round(tone(LEFT_HZ, f));
+            samples[2 * f + 1] = (short) Math.round(tone(RIGHT_HZ, f));
+        }
+        DecodedAudio audio = new DecodedAudio(new AudioFormat(RATE, 16, 2, true, false), samples);
+
+        System.out.printf("[ResamplerBenchmark] %.0f s stereo test signal%n", seconds);
+        System.out.println("kernel   tempo    SNR dB   crosstalk dB   Mframes/s   cpu%core");
+
+        for (ResamplingStretch.Kernel kernel : ResamplingStretch.Kernel.values()) {
+            ResamplingStretch engine = new ResamplingStretch(kernel);
+            engine.prepare(2, RATE);
+            for (double tempo : TEMPOS) {
+                int outFrames = (int) ((frames - 64) / tempo);
+                short[] out = new short[outFrames * 2];
+                render(engine, audio, out, outFrames, tempo); // warm-up (JIT)
+
+                long t0 = System.nanoTime();
+                int rendered = render(engine, audio, out, outFrames, tempo);
+                long nanos = System.nanoTime() - t0;
+
+                double[] quality = measure(out, rendered, tempo);
+                double framesPerSec = rendered / (nanos / 1e9);
+                System.out.printf("%-7s  %5.2f   %7.1f   %12.1f   %9.1f   %7.2f%%%n",
+                        kernel.name().toLowerCase(), tempo, quality[0], quality[1],
+                        framesPerSec / 1e6, 100.0 * RATE / framesPerSec);
+            }
+        }
+    }
+
+    private static double tone(double[] freqs, double frame) {
+        double v = 0;
+        for (double hz : freqs) {
+            v += AMPLITUDE * Math.sin(2 * Math.PI * hz * frame / RATE);
+        }
+        return v;
+    }
+
+    private static int render(ResamplingStretch engine, PcmSource audio, short[] out, int frames, double tempo) {
+        engine.reset(0);
+        short[] block = new short[1024 * 2];
+        int done = 0;
+        while (done < frames) {
+            int n = engine.render(audio, block, Math.min(1024, frames - done), tempo);
+            if (n == 0) break;
+            System.arraycopy(block, 0, out, done * 2, n * 2);
+            done += n;
+        }
+        return done;
+    }
+
+    /**
+     * {SNR, crosstalk} in dB, skipping the edges where the kernels see zero padding.
+     * Tones pushed above Nyquist by the tempo are not expected in the output, so
+     * they are left out of the reference.
+     */
+    private static double[] measure(short[] out, int frames, double tempo) {
+        double nyquist = RATE / 2 * 0.95;
+        double signal = 0, error = 0;
+        for (int f = 64; f < frames - 64; f++) {
+            double src = f * tempo;
+            for (int c = 0; c < 2; c++) {
+                double ref = 0;
+                for (double hz : c == 0 ? LEFT_HZ : RIGHT_HZ) {
+                    if (hz * tempo < nyquist) ref += AMPLITUDE * Math.sin(2 * Math.PI * hz * src / RATE);
+                }
+                double e = out[2 * f + c] - ref;
+                signal += ref * ref;
+                error += e * e;
+            }
+        }
+
+        // Crosstalk: correlate the left output with the right channel's tones
+        double leak = 0, own = 0;
+        for (double hz : RIGHT_HZ) leak += toneEnergy(out, frames, 0, hz * tempo);
+        for (double hz : LEFT_HZ) own += toneEnergy(out, frames, 0, hz * tempo);
+        return new double[] {
+            10 * Math.log10(signal / Math.max(error, 1e-9)),
+            10 * Math.log10(Math.max(leak, 1e-12) / own)
+        };
+    }
+
+    /**
+     * Energy of one frequency in a channel (single-bin DFT)
+     */
+    private static double toneEnergy(short[] out, int frames, int channel, double hz) {
+        double re = 0, im = 0;
+        for (int f = 64; f < frames - 64; f++) {
+            double a = 2 * Math.PI * hz * f / RATE;
+            re += out[2 * f + channel] * Math.cos(a);
+            im += out[2 * f + channel] * Math.sin(a);
+        }
+        return re * re + im * im;
+    }
+}
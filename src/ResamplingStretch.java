@@ -0,0 +1,247 @@
+/**
+ * ResamplingStretch - Varispeed: steps through the source faster or slower and
+ * interpolates, so pitch follows tempo. The cheapest engine.
+ *
+ * Positions are in frames and every channel is interpolated from its own samples.
+ * The default kernel is a 16-tap Blackman-windowed sinc whose cutoff drops with
+ * the tempo when speeding up, so the octave folded down by fast playback is
+ * filtered out instead of aliasing. Cubic (Catmull-Rom) and linear kernels are
+ * kept for slow machines and for comparison (see ResamplerBenchmark).
+ */
+public class ResamplingStretch implements TimeStretchEngine {
+
+    public enum Kernel { LINEAR, CUBIC, SINC }
+
+    private static final int SINC_TAPS = 16;
+    private static final int SINC_PHASES = 256;     // table rows per source frame, interpolated between
+    private static final double PASSBAND = 0.95;    // fraction of Nyquist kept when speeding up
+    private static final int WINDOW_FRAMES = 4096 * 4 + SINC_TAPS + 4; // a block at 4x tempo
+
+    private final Kernel kernel;
+    private final int taps;         // source frames each output frame is built from
+    private final int before;       // of which before floor(position)
+
+    private int channels = 1;
+    private double position = 0.0;  // fractional source frame
+    private short[] sourceWindow = new short[0]; // interleaved source frames for the block being rendered
+
+    // Sinc coefficients for the current cutoff: (SINC_PHASES + 1) rows of taps
+    private final float[] sincTable;
+    private double tableCutoff = -1;
+
+    public ResamplingStretch() {
+        this(Kernel.SINC);
+    }
+
+    public ResamplingStretch(Kernel kernel) {
+        this.kernel = kernel;
+        switch (kernel) {
+            case LINEAR: taps = 2; break;
+            case CUBIC: taps = 4; break;
+            default: taps = SINC_TAPS; break;
+        }
+        before = taps / 2 - 1;
+        sincTable = kernel == Kernel.SINC ? new float[(SINC_PHASES + 1) * SINC_TAPS] : null;
+    }
+
+    @Override
+    public String getName() {
+        return kernel == Kernel.SINC ? "resample" : "resample-" + kernel.name().toLowerCase();
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    public void prepare(int channels, float sampleRate) {
+        this.channels = Math.max(1, channels);
+        if (sourceWindow.length < WINDOW_FRAMES * this.channels) {
+            sourceWindow = new short[WINDOW_FRAMES * this.channels];
+        }
+        reset(0);
+    }
+
+    @Override
+    public void reset(double sourceFrame) {
+        position = sourceFrame;
+    }
+
+    @Override
+    public double getSourceFrame() {
+        return position;
+    }
+
+    @Override
+    public int render(PcmSource source, short[] output, int frames, double tempo) {
+        // A song converted to the device rate (ResampledPcmSource) is read underneath the
+        // conversion, so rate and tempo change in one pass; positions stay in its frames
+        double scale = 1.0;
+        if (source instanceof ResampledPcmSource) {
+            scale = ((ResampledPcmSource) source).getRatio();
+            source = ((ResampledPcmSource) source).getSource();
+            position *= scale;
+        }
+
+        // Step size in source frames: tempo = 2.0 moves through the source twice as fast
+        double step = tempo * scale;
+        if (kernel == Kernel.SINC) {
+            updateSincTable(Math.abs(step));
+        }
+
+        // Fetch every source frame this block's kernels touch
+        double endPosition = position + frames * step;
+        long first = (long) Math.floor(Math.min(position, endPosition)) - before;
+        int count = (int) ((long) Math.floor(Math.max(position, endPosition)) - before + taps - first) + 1;
+        if (sourceWindow.length < count * channels) {
+            sourceWindow = new short[count * channels]; // only for tempos above the usual range
+        }
+        long realEnd = first + fetch(source, first, count);
+
+        int generated = 0;
+        while (generated < frames) {
+            long frame = (long) Math.floor(position);
+            // The song ends once the frame after the position is gone (or when rewinding past the start)
+            if (frame < 0 || frame + 1 >= realEnd) {
+                break;
+            }
+            int base = (int) (frame - before - first) * channels;
+            double frac = position - frame;
+            int out = generated * channels;
+
+            switch (kernel) {
+                case LINEAR: linear(base, frac, output, out); break;
+                case CUBIC: cubic(base, frac, output, out); break;
+                default: sinc(base, frac, output, out); break;
+            }
+
+            position += step;
+            generated++;
+        }
+        position /= scale;
+        return generated;
+    }
+
+    /**
+     * Read count frames from first into the window, zero-filling before the song start
+     * and past its end. Returns how many frames from first on are real (lead included).
+     */
+    private int fetch(PcmSource source, long first, int count) {
+        int lead = (int) Math.max(0, Math.min(count, -first));
+        java.util.Arrays.fill(sourceWindow, 0, lead * channels, (short) 0);
+        int got = 0;
+        while (lead + got < count) {
+            int n = source.read(first + lead + got, sourceWindow, (lead + got) * channels, count - lead - got);
+            if (n <= 0) break;
+            got += n;
+        }
+        java.util.Arrays.fill(sourceWindow, (lead + got) * channels, count * channels, (short) 0);
+        return lead + got;
+    }
+
+    // Kernels: window index base is frame (floor(position) - before), interleaved.
+    // Loops run over contiguous taps per channel so the JIT can unroll and vectorise them.
+
+    private void linear(int base, double frac, short[] output, int out) {
+        short[] w = sourceWindow;
+        int next = base + channels;
+        for (int c = 0; c < channels; c++) {
+            double s0 = w[base + c];
+            output[out + c] = clip(s0 + frac * (w[next + c] - s0));
+        }
+    }
+
+    private void cubic(int base, double t, short[] output, int out) {
+        // Catmull-Rom through frames -1, 0, 1, 2 around the position
+        double t2 = t * t;
+        double t3 = t2 * t;
+        double c0 = -0.5 * t3 + t2 - 0.5 * t;
+        double c1 = 1.5 * t3 - 2.5 * t2 + 1.0;
+        double c2 = -1.5 * t3 + 2.0 * t2 + 0.5 * t;
+        double c3 = 0.5 * t3 - 0.5 * t2;
+        short[] w = sourceWindow;
+        int ch = channels;
+        for (int c = 0; c < ch; c++) {
+            int i = base + c;
+            output[out + c] = clip(c0 * w[i] + c1 * w[i + ch] + c2 * w[i + 2 * ch] + c3 * w[i + 3 * ch]);
+        }
+    }
+
+    private void sinc(int base, double frac, short[] output, int out) {
+        double row = frac * SINC_PHASES;
+        int r = (int) row;
+        float mix = (float) (row - r);
+        int row0 = r * SINC_TAPS;
+        int row1 = row0 + SINC_TAPS;
+        float[] table = sincTable;
+        short[] w = sourceWindow;
+        int ch = channels;
+
+        if (ch == 2) {
+            // Stereo fast path: both channels in one pass over the taps
+            float left = 0f, right = 0f;
+            for (int k = 0; k < SINC_TAPS; k++) {
+                float a = table[row0 + k];
+                float coef = a + mix * (table[row1 + k] - a);
+                int i = base + 2 * k;
+                left += coef * w[i];
+                right += coef * w[i + 1];
+            }
+            output[out] = clip(left);
+            output[out + 1] = clip(right);
+            return;
+        }
+        for (int c = 0; c < ch; c++) {
+            float acc = 0f;
+            for (int k = 0; k < SINC_TAPS; k++) {
+                float a = table[row0 + k];
+                acc += (a + mix * (table[row1 + k] - a)) * w[base + k * ch + c];
+            }
+            output[out + c] = clip(acc);
+        }
+    }
+
+    /**
+     * Rebuild the sinc table when the tempo moves the cutoff by more than half a percent.
+     * Speeding up by s stretches the spectrum by s, so the cutoff drops to about 1/s
+     * of Nyquist; at or below normal speed nothing is filtered.
+     */
+    private void updateSincTable(double speed) {
+        double cutoff = speed <= 1.0 ? 1.0 : PASSBAND / speed; // full band (exact) up to normal speed
+        if (Math.abs(cutoff - tableCutoff) <= tableCutoff * 0.005) return;
+        tableCutoff = cutoff;
+
+        int half = SINC_TAPS / 2;
+        for (int p = 0; p <= SINC_PHASES; p++) {
+            double frac = (double) p / SINC_PHASES;
+            double sum = 0;
+            for (int k = 0; k < SINC_TAPS; k++) {
+                double x = k - before - frac; // distance from the position, in source frames
+                double v = cutoff * sincPi(cutoff * x) * blackman(x / half);
+                sincTable[p * SINC_TAPS + k] = (float) v;
+                sum += v;
+            }
+            for (int k = 0; k < SINC_TAPS; k++) {
+                sincTable[p * SINC_TAPS + k] /= (float) sum; // unity gain at DC for every phase
+            }
+        }
+    }
+
+    private static double sincPi(double x) {
+        return x == 0 ? 1.0 : Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * Blackman window over x in [-1, 1]
+     */
+    private static double blackman(double x) {
+        if (x <= -1 || x >= 1) return 0;
+        double a = Math.PI * (x + 1);
+        return 0.42 - 0.5 * Math.cos(a) + 0.08 * Math.cos(2 * a);
+    }
+
+    private static short clip(double v) {
+        long r = Math.round(v);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, r));
+    }
+}
@@ -49,6 +49,9 @@ class SerialPortHandle {
 		return string.toString().trim(); // convert the string builder to a string and trim
 		//trim removes trailing spaces or starting spaces
 	}
+	public String getPath() {
+		return path; // the port path identifies the device (e.g. for latency profiles)
+	}
 	public void printLine(String s) {
 		byte byteArray[] = s.getBytes(); //get the bytes
 		try {
@@ -0,0 +1,242 @@
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * SfxMixer - Layers short hit/miss/combo sounds over the music in the render loop.
+ *
+ * Any thread may call trigger(); triggers go through a lock-free queue and the
+ * render thread starts them at the beginning of the next block it renders, so a
+ * sound reaches the speakers one line buffer after the judgment (about 23 ms in
+ * LatencyMode.LOW) and through the same line as the music - no second line for the
+ * OS to mix. Sounds are built once in prepare() for the line's format; mixing
+ * allocates nothing.
+ *
+ * Registered as a BeatObserver it plays HIT for a GOOD, MISS for anything else and
+ * COMBO on every COMBO_EVERY consecutive GOODs. Put hit.wav, miss.wav or combo.wav
+ * in sfx/ to replace the built-in synthesized sounds.
+ */
+public class SfxMixer implements BeatObserver {
+
+    public static final int HIT = 0;
+    public static final int MISS = 1;
+    public static final int COMBO = 2;
+    private static final String[] NAMES = {"hit", "miss", "combo"};
+
+    private static final int MAX_VOICES = 8;
+    private static final int COMBO_EVERY = 10;
+    private static final String SFX_DIR = "sfx";
+
+    private final ConcurrentLinkedQueue<Integer> triggers = new ConcurrentLinkedQueue<>();
+    private volatile float volume = 0.6f;
+    private volatile boolean enabled = true;
+    private int combo = 0; // consecutive GOODs (judgment thread)
+
+    // Render thread only
+    private int channels = 0;
+    private float sampleRate = 0;
+    private short[][] sounds = new short[NAMES.length][]; // interleaved in the line's format
+    private final int[] voiceSound = new int[MAX_VOICES];
+    private final int[] voicePos = new int[MAX_VOICES];   // frame within the sound
+    private int activeVoices = 0;
+
+    /**
+     * Build the sounds for the line's format (render thread, when a line is opened)
+     */
+    public void prepare(int channels, float sampleRate) {
+        channels = Math.max(1, channels);
+        if (channels == this.channels && sampleRate == this.sampleRate) return;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        for (int s = 0; s < NAMES.length; s++) {
+            sounds[s] = toFormat(loadOrSynthesize(s, sampleRate), channels);
+        }
+        activeVoices = 0;
+    }
+
+    /**
+     * Queue a sound (HIT, MISS or COMBO); safe from any thread, never blocks
+     */
+    public void trigger(int sound) {
+        if (enabled && sound >= 0 && sound < NAMES.length) {
+            triggers.offer(sound);
+        }
+    }
+
+    /**
+     * Drop queued and playing sounds (e.g. on pause, so they do not fire late)
+     */
+    public void clear() {
+        triggers.clear();
+        activeVoices = 0;
+    }
+
+    public void setVolume(float volume) {
+        this.volume = Math.max(0f, Math.min(volume, 1f));
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        System.out.println("[SfxMixer] Hit sounds " + (enabled ? "on" : "off"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start queued sounds and add every playing sound into a rendered block (render thread)
+     */
+    public void mix(short[] block, int frames) {
+        if (channels == 0) return;
+        Integer sound;
+        while ((sound = triggers.poll()) != null) {
+            startVoice(sound);
+        }
+        if (activeVoices == 0) return;
+
+        float gain = volume;
+        for (int v = 0; v < activeVoices; v++) {
+            short[] s = sounds[voiceSound[v]];
+            int pos = voicePos[v];
+            int n = Math.min(frames, s.length / channels - pos);
+            int src = pos * channels;
+            for (int i = 0; i < n * channels; i++) {
+                int mixed = block[i] + Math.round(s[src + i] * gain);
+                block[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed));
+            }
+            voicePos[v] = pos + n;
+        }
+
+        // Retire finished voices by moving the last one into their slot
+        for (int v = activeVoices - 1; v >= 0; v--) {
+            if (voicePos[v] * channels >= sounds[voiceSound[v]].length) {
+                activeVoices--;
+                voiceSound[v] = voiceSound[activeVoices];
+                voicePos[v] = voicePos[activeVoices];
+            }
+        }
+    }
+
+    private void startVoice(int sound) {
+        int v = activeVoices;
+        if (v == MAX_VOICES) {
+            // Full: replace the voice that has played longest
+            v = 0;
+            for (int i = 1; i < MAX_VOICES; i++) {
+                if (voicePos[i] > voicePos[v]) v = i;
+            }
+        } else {
+            activeVoices++;
+        }
+        voiceSound[v] = sound;
+        voicePos[v] = 0;
+    }
+
+    // ===== BeatObserver: judgments become sounds =====
+
+    @Override
+    public void onChordResult(int laneMask, String judgment) {
+        if ("GOOD".equalsIgnoreCase(judgment)) {
+            combo++;
+            trigger(combo % COMBO_EVERY == 0 ? COMBO : HIT);
+        } else {
+            combo = 0;
+            trigger(MISS);
+        }
+    }
+
+    @Override
+    public void onHitResult(int laneIndex, String judgment) {
+        onChordResult(laneIndex >= 0 ? 1 << laneIndex : 0, judgment);
+    }
+
+    @Override
+    public void onBeatActivated(int laneIndex) {
+    }
+
+    @Override
+    public void onSequenceEnd() {
+        combo = 0;
+    }
+
+    @Override
+    public void onBeatmapChanged(String msg) {
+    }
+
+    @Override
+    public void onBeatmapIndexChanged(int beatmapIndex) {
+        combo = 0;
+    }
+
+    // ===== Sound building (prepare only) =====
+
+    /**
+     * Mono samples in [-1, 1] at the given rate: sfx/NAME.wav if present, else synthesized
+     */
+    private static float[] loadOrSynthesize(int sound, float rate) {
+        File file = new File(SFX_DIR, NAMES[sound] + ".wav");
+        if (file.isFile()) {
+            try {
+                DecodedAudio audio = DecodedAudio.load(file.getPath());
+                return resample(audio.toMono(), audio.getSampleRate(), rate);
+            } catch (Exception e) {
+                System.err.println("[SfxMixer] Could not load " + file + ", using built-in: " + e.getMessage());
+            }
+        }
+        switch (sound) {
+            case HIT:
+                return tone(rate, 0.045, 1320, 1320, 60);  // short bright tick
+            case MISS:
+                return tone(rate, 0.110, 220, 150, 25);    // low falling thud
+            default:
+                return tone(rate, 0.160, 880, 1760, 18);   // rising chirp
+        }
+    }
+
+    /**
+     * Sine sweeping from startHz to endHz with an exponential decay and a 2 ms fade-in (no click)
+     */
+    private static float[] tone(float rate, double seconds, double startHz, double endHz, double decay) {
+        int n = (int) (rate * seconds);
+        float[] out = new float[n];
+        double phase = 0;
+        int attack = Math.max(1, (int) (rate * 0.002));
+        for (int i = 0; i < n; i++) {
+            double t = i / (double) rate;
+            double hz = startHz + (endHz - startHz) * i / n;
+            phase += 2 * Math.PI * hz / rate;
+            double env = Math.exp(-decay * t) * Math.min(1.0, i / (double) attack);
+            out[i] = (float) (Math.sin(phase) * env);
+        }
+        return out;
+    }
+
+    private static float[] resample(float[] in, float fromRate, float toRate) {
+        if (fromRate == toRate || in.length < 2) return in;
+        int n = (int) ((long) in.length * toRate / fromRate);
+        float[] out = new float[n];
+        double step = fromRate / (double) toRate;
+        for (int i = 0; i < n; i++) {
+            double pos = i * step;
+            int j = Math.min((int) pos, in.length - 2);
+            double frac = pos - j;
+            out[i] = (float) (in[j] + frac * (in[j + 1] - in[j]));
+        }
+        return out;
+    }
+
+    private static short[] toFormat(float[] mono, int channels) {
+        short[] out = new short[mono.length * channels];
+        for (int i = 0; i < mono.length; i++) {
+            short v = (short) Math.round(Math.max(-1f, Math.min(mono[i], 1f)) * 32767);
+            for (int c = 0; c < channels; c++) {
+                out[i * channels + c] = v;
+            }
+        }
+        return out;
+    }
+}
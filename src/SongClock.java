@@ -0,0 +1,22 @@
+/**
+ * SongClock - Reports where the current song is, in song time.
+ * Implemented by the music player so BeatJudge can schedule beats against
+ * the audio that is actually playing instead of the wall clock.
+ */
+public interface SongClock {
+    /**
+     * Position in the current song in seconds (song time, not wall time).
+     * Advances faster than wall time when the tempo is above 1.0 and stops while paused.
+     */
+    double getSongTimeSec();
+
+    /**
+     * Current playback tempo factor (1.0 = normal speed)
+     */
+    double getTempo();
+
+    /**
+     * True while the song position is advancing (playing and not paused)
+     */
+    boolean isAdvancing();
+}
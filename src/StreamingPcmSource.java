@@ -0,0 +1,216 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * StreamingPcmSource - Decodes a song on the fly into a fixed-size ring of frames.
+ *
+ * A decoder thread keeps the ring filled ahead of the last frame the player read;
+ * frames more than KEEP_BEHIND_FRAMES behind it are recycled. Memory is the ring
+ * size whatever the song length, and playback can start as soon as the first
+ * chunk is decoded. A read outside the buffered window (a seek back, or a jump far
+ * ahead) reopens the file at that frame.
+ */
+public class StreamingPcmSource implements PcmSource {
+
+    public static final int DEFAULT_RING_FRAMES = 1 << 16;   // ~1.5 s at 44.1 kHz
+    private static final int CHUNK_FRAMES = 4096;
+    private static final int KEEP_BEHIND_FRAMES = 1024;      // history kept for interpolation
+
+    private final String path;
+    private final AudioFormat format;
+    private final int channels;
+    private final long frameLength;
+    private final int ringFrames;
+    private final short[] ring;
+
+    // Window of decoded frames [startFrame, endFrame), guarded by this
+    private long startFrame = 0;
+    private long endFrame = 0;
+    private boolean endOfStream = false;
+    private long seekTarget = -1;
+    private int seekGeneration = 0;
+    private boolean closed = false;
+    private IllegalStateException failure;
+
+    private final Thread decoder;
+
+    public StreamingPcmSource(String path) throws Exception {
+        this(path, DEFAULT_RING_FRAMES);
+    }
+
+    public StreamingPcmSource(String path, int ringFrames) throws Exception {
+        this.path = path;
+        AudioInputStream probe = DecodedAudio.openPcmStream(path);
+        this.format = probe.getFormat();
+        this.frameLength = probe.getFrameLength(); // AudioSystem.NOT_SPECIFIED (-1) if unknown
+        this.channels = Math.max(1, format.getChannels());
+        this.ringFrames = Math.max(ringFrames, CHUNK_FRAMES * 2);
+        this.ring = new short[this.ringFrames * channels];
+
+        decoder = new Thread(() -> decodeLoop(probe), "PcmDecoderThread");
+        decoder.setDaemon(true);
+        decoder.start();
+        System.out.println("[StreamingPcmSource] Streaming " + path + " with a " + this.ringFrames + "-frame ring");
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public long getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public synchronized int read(long frame, short[] dst, int offset, int frames) {
+        if (frame < 0 || frames <= 0) return 0;
+
+        // Outside what the ring holds or is about to decode: restart the decoder there
+        if (frame < startFrame || frame > endFrame + ringFrames / 2) {
+            startFrame = frame;
+            endFrame = frame;
+            endOfStream = false;
+            seekTarget = frame;
+            seekGeneration++;
+            notifyAll();
+        }
+
+        // Frames behind the reader (minus a little history) can be overwritten now
+        long release = Math.min(frame - KEEP_BEHIND_FRAMES, endFrame);
+        if (release > startFrame) {
+            startFrame = release;
+            notifyAll();
+        }
+
+        // Wait for the requested frames; at song start that is the first chunk, not the file
+        long wanted = frame + Math.min(frames, ringFrames / 2);
+        while (endFrame < wanted && !endOfStream && !closed && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        if (failure != null) throw failure;
+
+        int n = (int) Math.min(frames, endFrame - frame);
+        if (n <= 0) return 0;
+        int ringPos = (int) (frame % ringFrames);
+        int first = Math.min(n, ringFrames - ringPos);
+        System.arraycopy(ring, ringPos * channels, dst, offset, first * channels);
+        if (first < n) {
+            System.arraycopy(ring, 0, dst, offset + first * channels, (n - first) * channels);
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        decoder.interrupt();
+    }
+
+    private void decodeLoop(AudioInputStream stream) {
+        int frameBytes = channels * 2;
+        byte[] bytes = new byte[CHUNK_FRAMES * frameBytes];
+        short[] chunk = new short[CHUNK_FRAMES * channels];
+
+        try {
+            while (true) {
+                int generation;
+                int want;
+                long seekTo;
+                synchronized (this) {
+                    while (!closed && seekTarget < 0 && (endOfStream || endFrame - startFrame >= ringFrames)) {
+                        wait();
+                    }
+                    if (closed) break;
+
+                    seekTo = seekTarget;
+                    seekTarget = -1;
+                    generation = seekGeneration;
+                    want = (int) Math.min(CHUNK_FRAMES, ringFrames - (endFrame - startFrame));
+                }
+
+                // File IO happens outside the lock so the player is never blocked on it
+                if (seekTo >= 0) {
+                    stream.close();
+                    stream = DecodedAudio.openPcmStream(path);
+                    skipFully(stream, seekTo * frameBytes);
+                }
+                int got = readFrames(stream, bytes, want * frameBytes) / frameBytes;
+                for (int i = 0; i < got * channels; i++) {
+                    chunk[i] = (short) ((bytes[i * 2 + 1] << 8) | (bytes[i * 2] & 0xFF));
+                }
+
+                synchronized (this) {
+                    if (generation != seekGeneration) continue; // a seek made this chunk stale
+                    if (got == 0) {
+                        endOfStream = true;
+                    } else {
+                        int ringPos = (int) (endFrame % ringFrames);
+                        int first = Math.min(got, ringFrames - ringPos);
+                        System.arraycopy(chunk, 0, ring, ringPos * channels, first * channels);
+                        if (first < got) {
+                            System.arraycopy(chunk, first * channels, ring, 0, (got - first) * channels);
+                        }
+                        endFrame += got;
+                    }
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Exception e) {
+            synchronized (this) {
+                if (closed) return; // IO interrupted by close()
+                failure = new IllegalStateException("Decoding " + path + " failed", e);
+                notifyAll();
+            }
+            System.err.println("[StreamingPcmSource] Decoding " + path + " failed: " + e.getMessage());
+        } finally {
+            try {
+                stream.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Read up to len bytes, only returning short at the end of the stream
+     */
+    private static int readFrames(AudioInputStream in, byte[] buf, int len) throws java.io.IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(buf, total, len - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static void skipFully(AudioInputStream in, long bytes) throws java.io.IOException {
+        while (bytes > 0) {
+            long n = in.skip(bytes);
+            if (n <= 0) {
+                // Some converting streams do not skip; read and discard instead
+                byte[] scrap = new byte[(int) Math.min(bytes, 64 * 1024)];
+                int r = in.read(scrap);
+                if (r < 0) return;
+                n = r;
+            }
+            bytes -= n;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * StretchBenchmark - How much CPU and memory each time-stretch engine costs.
+ *
+ * Renders a song through every engine at a few tempos, in the same block size the
+ * player uses, and reports CPU time as a share of one core at real time (a render
+ * thread has to stay well under 100%), plus bytes allocated by the render loop,
+ * which should be zero once the engine is warmed up.
+ *
+ * Usage: java StretchBenchmark [song.wav] [seconds]   (song defaults to music/KOTON.wav)
+ */
+public class StretchBenchmark {
+
+    private static final double[] TEMPOS = {0.8, 1.0, 1.3};
+    private static final String[] ENGINES = {"resample", "wsola", "phasevocoder"};
+    private static final int BLOCK_BYTES = 4096; // same as the player's line writes
+
+    public static void main(String[] args) throws Exception {
+        String song = args.length > 0 ? args[0] : "music/KOTON.wav"; // first song of the playlist
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 20.0;
+        if (!new java.io.File(song).isFile()) {
+            System.err.println("[StretchBenchmark] No such song: " + song);
+            System.err.println("Usage: java StretchBenchmark [song.wav] [seconds]");
+            System.exit(1);
+        }
+
+        DecodedAudio audio = DecodedAudio.load(song);
+        int channels = audio.getChannels();
+        float rate = audio.getSampleRate();
+        int blockFrames = BLOCK_BYTES / (2 * channels);
+        short[] out = new short[blockFrames * channels];
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+
+        System.out.printf("[StretchBenchmark] %s, %d ch @ %.0f Hz, %.0f s of output per run%n",
+                song, channels, rate, seconds);
+        System.out.println("engine        tempo   cpu%core   ns/frame   alloc bytes");
+
+        for (String name : ENGINES) {
+            TimeStretchEngine engine = TimeStretchEngine.create(name);
+            engine.prepare(channels, rate);
+            for (double tempo : TEMPOS) {
+                long outputFrames = (long) (seconds * rate);
+                run(engine, audio, out, blockFrames, tempo, outputFrames); // warm-up (JIT)
+
+                long cpu0 = threads.getCurrentThreadCpuTime();
+                long alloc0 = allocations != null ? allocations.getCurrentThreadAllocatedBytes() : 0;
+                long rendered = run(engine, audio, out, blockFrames, tempo, outputFrames);
+                long cpu = threads.getCurrentThreadCpuTime() - cpu0;
+                long alloc = allocations != null ? allocations.getCurrentThreadAllocatedBytes() - alloc0 : -1;
+
+                double audioNanos = rendered / rate * 1e9;
+                System.out.printf("%-12s  %5.2f   %7.2f%%   %8.1f   %11d%n",
+                        name, tempo, 100.0 * cpu / audioNanos, (double) cpu / rendered, alloc);
+            }
+        }
+    }
+
+    /**
+     * Render outputFrames frames from the top of the song, looping it if it is short
+     */
+    private static long run(TimeStretchEngine engine, PcmSource audio, short[] out,
+                            int blockFrames, double tempo, long outputFrames) {
+        engine.reset(0);
+        long rendered = 0;
+        while (rendered < outputFrames) {
+            int n = engine.render(audio, out, blockFrames, tempo);
+            if (n == 0) {
+                engine.reset(0);
+                continue;
+            }
+            rendered += n;
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TempoVariantRenderer - Bakes every song at every difficulty tempo ahead of time.
+ *
+ * MusicController only ever settles on the tempos in MusicController.tempoSteps()
+ * (0.8x to 1.3x), so each song x tempo is rendered once through a stretch engine,
+ * as fast as the CPU allows, on a pool with one worker per core. Results are plain
+ * 16-bit WAVs that MappedPcmSource maps straight into the player; with
+ * --prerendered=DIR (RealtimeTempoPlayer.setPrerenderedDir) a station plays them
+ * instead of stretching live. Variants newer than their song are skipped unless
+ * --force is given. Tempo 1.0 is the song itself and is not written.
+ *
+ * Usage: java TempoVariantRenderer [--out=prerendered] [--engine=wsola] [--threads=N] [--force] song.wav...
+ */
+public class TempoVariantRenderer {
+
+    public static final String DEFAULT_DIR = "prerendered";
+    private static final int BLOCK_FRAMES = 4096;
+
+    private final File outDir;
+    private final String engineName;
+    private final int threads;
+    private final boolean force;
+
+    public TempoVariantRenderer(File outDir, String engineName, int threads, boolean force) {
+        this.outDir = outDir;
+        this.engineName = engineName;
+        this.threads = Math.max(1, threads);
+        this.force = force;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File outDir = new File(DEFAULT_DIR);
+        String engine = "wsola";
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean force = false;
+        List<String> songs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) outDir = new File(arg.substring("--out=".length()));
+            else if (arg.startsWith("--engine=")) engine = arg.substring("--engine=".length());
+            else if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring("--threads=".length()));
+            else if (arg.equals("--force")) force = true;
+            else songs.add(arg);
+        }
+        if (songs.isEmpty()) {
+            System.err.println("Usage: java TempoVariantRenderer [--out=DIR] [--engine=NAME] [--threads=N] [--force] song.wav...");
+            System.exit(1);
+        }
+        new TempoVariantRenderer(outDir, engine, threads, force).renderAll(songs);
+    }
+
+    /**
+     * Render every song at every tempo step
+     *
+     * @return number of variant files written
+     */
+    public int renderAll(List<String> songs) throws Exception {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir);
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "TempoVariantRenderer");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Double>> jobs = new ArrayList<>();
+        List<PcmSource> sources = new ArrayList<>();
+        try {
+            for (String song : songs) {
+                PcmSource source = null;
+                for (double tempo : MusicController.tempoSteps()) {
+                    if (Math.abs(tempo - 1.0) < 1e-9) continue;
+                    File target = TempoVariantSource.fileFor(outDir, song, tempo);
+                    if (!force && target.isFile() && target.lastModified() >= new File(song).lastModified()) {
+                        System.out.println("[TempoVariantRenderer] Up to date: " + target);
+                        continue;
+                    }
+                    if (source == null) {
+                        // One copy of the song is shared by its tempo jobs (reads are positional)
+                        source = open(song);
+                        sources.add(source);
+                    }
+                    PcmSource shared = source;
+                    jobs.add(pool.submit(() -> render(shared, tempo, target)));
+                }
+            }
+
+            double audioSeconds = 0;
+            for (Future<Double> job : jobs) {
+                audioSeconds += job.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("[TempoVariantRenderer] %d variants, %.0f s of audio in %.1f s on %d threads%n",
+                    jobs.size(), audioSeconds, seconds, threads);
+            return jobs.size();
+        } finally {
+            pool.shutdownNow();
+            for (PcmSource source : sources) source.close();
+        }
+    }
+
+    private static PcmSource open(String song) throws Exception {
+        PcmSource source = MappedPcmSource.tryOpen(song);
+        return source != null ? source : DecodedAudio.load(song);
+    }
+
+    /**
+     * Stretch one song to one tempo into a WAV (written to a temp file, then moved into place)
+     *
+     * @return seconds of audio written
+     */
+    private double render(PcmSource source, double tempo, File target) throws IOException {
+        long start = System.nanoTime();
+        int channels = source.getChannels();
+        float rate = source.getFormat().getSampleRate();
+        TimeStretchEngine engine = TimeStretchEngine.create(engineName);
+        engine.prepare(channels, rate);
+        engine.reset(0);
+
+        short[] block = new short[BLOCK_FRAMES * channels];
+        ByteBuffer bytes = ByteBuffer.allocate(block.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        File tmp = new File(target.getPath() + ".tmp");
+        long frames = 0;
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(wavHeader(channels, (int) rate, 0), 0); // sizes patched below
+            out.position(44);
+            int n;
+            while ((n = engine.render(source, block, BLOCK_FRAMES, tempo)) > 0) {
+                bytes.clear();
+                bytes.asShortBuffer().put(block, 0, n * channels);
+                bytes.limit(n * channels * 2);
+                while (bytes.hasRemaining()) out.write(bytes);
+                frames += n;
+            }
+            out.write(wavHeader(channels, (int) rate, frames * channels * 2), 0);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[TempoVariantRenderer] %s (%s) in %.1f s, %.0fx real time%n",
+                target, engine.getName(), seconds, frames / rate / seconds);
+        return frames / rate;
+    }
+
+    /**
+     * Canonical 44-byte header of a 16-bit PCM WAV
+     */
+    private static ByteBuffer wavHeader(int channels, int sampleRate, long dataBytes) throws IOException {
+        if (dataBytes > 0xFFFFFFFFL - 36) throw new IOException("Variant too long for a WAV file");
+        ByteBuffer h = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        h.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt((int) (36 + dataBytes));
+        h.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        h.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16);
+        h.putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+                .putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        h.put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataBytes);
+        h.flip();
+        return h;
+    }
+}
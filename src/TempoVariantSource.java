@@ -0,0 +1,123 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * TempoVariantSource - A song together with copies of it pre-rendered at fixed tempos.
+ *
+ * Reads go to the original song, so any stretch engine plays it as usual;
+ * PrerenderedStretch asks variantFor(tempo) and, when the player sits exactly on a
+ * pre-rendered tempo, plays the variant instead of stretching live. Variants are
+ * 16-bit WAVs written by TempoVariantRenderer and memory-mapped (MappedPcmSource),
+ * named after the song and the tempo in percent: music/KOTON.wav at 0.8x is
+ * KOTON@080.wav in the variant directory.
+ */
+public class TempoVariantSource implements PcmSource {
+
+    private final PcmSource original;
+    private final int[] percents;       // tempo * 100 of each variant
+    private final PcmSource[] variants;
+
+    private TempoVariantSource(PcmSource original, int[] percents, PcmSource[] variants) {
+        this.original = original;
+        this.percents = percents;
+        this.variants = variants;
+    }
+
+    /**
+     * Wrap a song with whatever up-to-date variants of it are in dir, or return it
+     * unchanged if there are none. Variants older than the song, or in a different
+     * format, are ignored.
+     */
+    public static PcmSource open(File dir, String songPath, PcmSource original) {
+        if (dir == null || !dir.isDirectory()) return original;
+
+        File song = new File(songPath);
+        List<Integer> found = new ArrayList<>();
+        List<PcmSource> sources = new ArrayList<>();
+        for (double tempo : MusicController.tempoSteps()) {
+            File file = fileFor(dir, songPath, tempo);
+            if (!file.isFile() || file.lastModified() < song.lastModified()) continue;
+            MappedPcmSource variant = MappedPcmSource.tryOpen(file.getPath());
+            if (variant == null) continue;
+            if (!sameFormat(variant.getFormat(), original.getFormat())) {
+                System.err.println("[TempoVariantSource] " + file + " does not match the song's format, ignoring it");
+                continue;
+            }
+            found.add(percentOf(tempo));
+            sources.add(variant);
+        }
+        if (sources.isEmpty()) return original;
+
+        int[] percents = new int[found.size()];
+        for (int i = 0; i < percents.length; i++) percents[i] = found.get(i);
+        System.out.println("[TempoVariantSource] " + songPath + ": " + percents.length + " pre-rendered tempos");
+        return new TempoVariantSource(original, percents, sources.toArray(new PcmSource[0]));
+    }
+
+    /**
+     * Where the variant of a song at a tempo lives
+     */
+    public static File fileFor(File dir, String songPath, double tempo) {
+        String name = new File(songPath).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return new File(dir, String.format("%s@%03d.wav", name, percentOf(tempo)));
+    }
+
+    /**
+     * The variant rendered at exactly this tempo, or null (called per block: no allocation)
+     */
+    public PcmSource variantFor(double tempo) {
+        int percent = percentOf(tempo);
+        if (Math.abs(tempo - percent / 100.0) > 1e-6) return null; // between steps (ramping)
+        for (int i = 0; i < percents.length; i++) {
+            if (percents[i] == percent) return variants[i];
+        }
+        return null;
+    }
+
+    /**
+     * The same song and variants, each passed through convert (e.g. to the device rate)
+     */
+    public TempoVariantSource map(UnaryOperator<PcmSource> convert) {
+        PcmSource[] converted = new PcmSource[variants.length];
+        for (int i = 0; i < variants.length; i++) {
+            converted[i] = convert.apply(variants[i]);
+        }
+        return new TempoVariantSource(convert.apply(original), percents, converted);
+    }
+
+    private static int percentOf(double tempo) {
+        return (int) Math.round(tempo * 100);
+    }
+
+    private static boolean sameFormat(AudioFormat a, AudioFormat b) {
+        return a.getChannels() == b.getChannels() && a.getSampleRate() == b.getSampleRate();
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return original.getFormat();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return original.getFrameLength();
+    }
+
+    @Override
+    public int read(long frame, short[] dst, int offset, int frames) {
+        return original.read(frame, dst, offset, frames);
+    }
+
+    @Override
+    public void close() {
+        original.close();
+        for (PcmSource variant : variants) {
+            variant.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * TimeStretchEngine - Turns source PCM into output PCM at a given tempo.
+ * The player's render thread owns one engine and calls render() once per block,
+ * passing the current tempo, so tempo changes take effect on the next block.
+ *
+ * Implementations must not allocate in render(); all buffers are sized in prepare().
+ */
+public interface TimeStretchEngine {
+    
+    /**
+     * Size internal buffers for a song format (called when a song starts, not per block)
+     */
+    void prepare(int channels, float sampleRate);
+    
+    /**
+     * Forget all history and continue from a source frame (song start, seek, song change)
+     */
+    void reset(double sourceFrame);
+    
+    /**
+     * Render frames output frames (interleaved) into out
+     * 
+     * @param tempo 1.0 = normal speed, 1.3 = 30% faster
+     * @return frames rendered; fewer than asked only at the end of the song
+     */
+    int render(PcmSource source, short[] out, int frames, double tempo);
+    
+    /**
+     * Source frame heard at the next output frame (drives SongClock)
+     */
+    double getSourceFrame();
+    
+    String getName();
+    
+    /**
+     * Engine by name: "wsola" (default, keeps pitch), "phasevocoder" (keeps pitch,
+     * smoother on sustained tones) or "resample" (varispeed, pitch follows tempo;
+     * "resample-cubic" and "resample-linear" pick cheaper kernels). Prefixed with
+     * "prerendered:" the engine plays TempoVariantRenderer output where it can and
+     * only stretches live between tempo steps.
+     */
+    static TimeStretchEngine create(String name) {
+        if (name == null) return new WsolaStretch();
+        if (name.toLowerCase().startsWith(PrerenderedStretch.PREFIX)) {
+            return new PrerenderedStretch(create(name.substring(PrerenderedStretch.PREFIX.length())));
+        }
+        switch (name.toLowerCase()) {
+            case "resample":
+                return new ResamplingStretch();
+            case "resample-cubic":
+                return new ResamplingStretch(ResamplingStretch.Kernel.CUBIC);
+            case "resample-linear":
+                return new ResamplingStretch(ResamplingStretch.Kernel.LINEAR);
+            case "phasevocoder":
+            case "pv":
+                return new PhaseVocoderStretch();
+            case "wsola":
+                return new WsolaStretch();
+            default:
+                System.err.println("[TimeStretchEngine] Unknown engine " + name + ", using wsola");
+                return new WsolaStretch();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.PriorityQueue;
+
+/**
+ * VirtualClock - Single-threaded discrete-event clock for headless simulation.
+ *
+ * Nothing really sleeps: when the worker loop sleeps or waits, virtual time jumps
+ * to the next scheduled event (a simulated player hit, a button press...) or to the
+ * end of the wait, whichever comes first. Events run on the worker's own thread,
+ * so a whole session is deterministic and takes microseconds per beat.
+ */
+public class VirtualClock implements GameClock {
+
+    private static class Event implements Comparable<Event> {
+        final long atMs;
+        final long seq;
+        final Runnable action;
+
+        Event(long atMs, long seq, Runnable action) {
+            this.atMs = atMs;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (atMs != o.atMs) return Long.compare(atMs, o.atMs);
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final long limitMs;
+    private long nowMs = 0;
+    private long nextSeq = 0;
+    private boolean interruptPending = false;
+    private Runnable task;
+
+    /**
+     * @param limitMs virtual time after which the session is considered hung
+     */
+    public VirtualClock(long limitMs) {
+        this.limitMs = limitMs;
+    }
+
+    /**
+     * Schedule an action delayMs from now (virtual time)
+     */
+    public void schedule(long delayMs, Runnable action) {
+        events.add(new Event(nowMs + Math.max(0, delayMs), nextSeq++, action));
+    }
+
+    /**
+     * Run the task registered through start() on the calling thread until it returns
+     */
+    public void runTask() {
+        if (task == null) {
+            throw new IllegalStateException("No task was started on this clock");
+        }
+        Runnable t = task;
+        task = null;
+        t.run();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return nowMs;
+    }
+
+    @Override
+    public void sleep(long ms) throws InterruptedException {
+        advance(nowMs + Math.max(0, ms), false);
+    }
+
+    @Override
+    public void waitOn(Object monitor, long ms) throws InterruptedException {
+        // monitor.wait(0) means "until notified": the only thing that can notify is an event
+        long until = (ms <= 0) ? Long.MAX_VALUE : nowMs + ms;
+        advance(until, true);
+    }
+
+    @Override
+    public Thread start(Runnable task, String name) {
+        this.task = task;
+        return null;
+    }
+
+    @Override
+    public void interrupt(Thread worker) {
+        interruptPending = true;
+    }
+
+    /**
+     * Move virtual time towards untilMs, firing every event due on the way.
+     * A wait returns right after the first event (it may have been a notify);
+     * a sleep only ends early if an event interrupted it.
+     */
+    private void advance(long untilMs, boolean returnAfterEvent) throws InterruptedException {
+        while (!events.isEmpty() && events.peek().atMs <= untilMs) {
+            Event e = events.poll();
+            nowMs = Math.max(nowMs, e.atMs);
+            checkLimit();
+            e.action.run();
+
+            if (interruptPending) {
+                interruptPending = false;
+                throw new InterruptedException("virtual interrupt");
+            }
+            if (returnAfterEvent) return;
+        }
+
+        if (untilMs == Long.MAX_VALUE) {
+            throw new IllegalStateException("Deadlock at t=" + nowMs + " ms: waiting forever with no events left");
+        }
+        nowMs = untilMs;
+        checkLimit();
+    }
+
+    private void checkLimit() {
+        if (nowMs > limitMs) {
+            throw new IllegalStateException("Session exceeded " + limitMs + " ms of virtual time");
+        }
+    }
+}
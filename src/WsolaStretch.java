@@ -0,0 +1,137 @@
+/**
+ * WsolaStretch - Waveform-similarity overlap-add time stretch (keeps pitch).
+ *
+ * Each hop takes a Hann-windowed frame of the original audio from around the
+ * analysis position and overlap-adds it at half-frame spacing. Before adding,
+ * the frame start is shifted by up to +-SEEK_MS so it lines up with the natural
+ * continuation of the previous frame (best normalised cross-correlation on the
+ * mono mix), which is what stops the phasiness and flutter of plain OLA.
+ * The search runs coarse (every 4th lag and sample) then refines +-3 lags; the
+ * exact continuation is always tried too, so steady material at tempo 1.0 comes
+ * out unchanged.
+ */
+public class WsolaStretch extends OverlapAddStretch {
+
+    private static final double FRAME_MS = 23.0;
+    private static final double SEEK_MS = 10.0;
+    private static final int COARSE = 4;
+
+    private int frame;      // frame length N (power of two)
+    private int overlap;    // N - hop, the region compared and cross-faded
+    private int seek;       // max shift either way, in frames
+
+    private float[] window;
+    private float[] ola;        // overlap-add accumulator, frame * channels
+    private short[] segment;    // source around the analysis position, (frame + 2 * seek) * channels
+    private float[] mono;       // mono mix of segment
+    private float[] target;     // mono continuation of the previous frame, overlap long
+    private boolean hasTarget;
+    private long targetFrame;   // source frame the target starts at
+
+    @Override
+    public String getName() {
+        return "wsola";
+    }
+
+    @Override
+    protected void allocate(int channels, float sampleRate) {
+        frame = Integer.highestOneBit((int) (sampleRate * FRAME_MS / 1000 * 1.5)); // nearest power of two
+        hop = frame / 2;
+        overlap = frame - hop;
+        seek = (int) (sampleRate * SEEK_MS / 1000);
+
+        window = new float[frame];
+        for (int i = 0; i < frame; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / frame)); // periodic Hann: halves sum to 1
+        }
+        ola = new float[frame * channels];
+        segment = new short[(frame + 2 * seek) * channels];
+        mono = new float[frame + 2 * seek];
+        target = new float[overlap];
+    }
+
+    @Override
+    protected void clearState() {
+        java.util.Arrays.fill(ola, 0f);
+        hasTarget = false;
+    }
+
+    @Override
+    protected boolean produceHop(PcmSource source, double analysisFrame, double tempo) {
+        long start = Math.round(analysisFrame) - seek;
+        int span = frame + 2 * seek;
+        int got = readSegment(source, start, segment, span);
+        if (got == 0 && start >= 0) return false;
+
+        float scale = 1f / channels;
+        for (int i = 0; i < span; i++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) sum += segment[i * channels + c];
+            mono[i] = sum * scale;
+        }
+
+        int best = hasTarget ? bestOffset(targetFrame - start) : seek;
+
+        // Overlap-add the chosen frame, emit the finished first hop, slide the accumulator
+        for (int i = 0; i < frame; i++) {
+            float w = window[i];
+            int src = (best + i) * channels;
+            for (int c = 0; c < channels; c++) {
+                ola[i * channels + c] += w * segment[src + c];
+            }
+        }
+        for (int i = 0; i < hop * channels; i++) {
+            hopOut[i] = clip(ola[i]);
+        }
+        System.arraycopy(ola, hop * channels, ola, 0, (frame - hop) * channels);
+        java.util.Arrays.fill(ola, (frame - hop) * channels, frame * channels, 0f);
+
+        // What would naturally follow the chosen frame: the next frame should resemble it
+        System.arraycopy(mono, best + hop, target, 0, overlap);
+        targetFrame = start + best + hop;
+        hasTarget = true;
+        return true;
+    }
+
+    /**
+     * Offset into the segment (0..2*seek) whose start best matches the target
+     *
+     * @param natural offset that continues the previous frame exactly
+     */
+    private int bestOffset(long natural) {
+        int best = seek;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = 0; lag <= 2 * seek; lag += COARSE) {
+            double score = similarity(lag, COARSE);
+            if (score > bestScore) {
+                bestScore = score;
+                best = lag;
+            }
+        }
+        // Refine around the coarse winner at full resolution (scores are not comparable across steps)
+        int coarse = best;
+        bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = Math.max(0, coarse - COARSE + 1); lag <= Math.min(2 * seek, coarse + COARSE - 1); lag++) {
+            double score = similarity(lag, 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = lag;
+            }
+        }
+        if (natural >= 0 && natural <= 2 * seek && natural != best
+                && similarity((int) natural, 1) >= bestScore) {
+            best = (int) natural;
+        }
+        return best;
+    }
+
+    private double similarity(int lag, int step) {
+        double dot = 0, energy = 1e-9;
+        for (int i = 0; i < overlap; i += step) {
+            float m = mono[lag + i];
+            dot += m * target[i];
+            energy += m * m;
+        }
+        return dot / Math.sqrt(energy);
+    }
+}